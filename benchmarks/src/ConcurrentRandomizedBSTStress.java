@@ -0,0 +1,177 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress test for ConcurrentRandomizedBST: writers insert, update and remove depositors
+ * while readers search, compute the mean and check the invariants of the published version.
+ *
+ * Every writer owns its own AFM range and keeps a reference map of what it wrote, so at the
+ * end the tree must match the union of the maps exactly. A set of "pinned" depositors is
+ * inserted up front and never touched, readers must always find them.
+ *
+ * ConcurrentRandomizedBSTTest runs the same checks for a second as part of the unit tests;
+ * this is the long-running version, for many threads and minutes.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar ConcurrentRandomizedBSTStress [writers] [readers] [seconds]
+ * Exits with status 1 if any check fails.
+ */
+public class ConcurrentRandomizedBSTStress {
+
+    private static final int PINNED = 1000;
+    private static final int RANGE = 5000; // AFMs owned by each writer
+    private static final int BASE_AFM = 100000000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        ConcurrentRandomizedBST tree = new ConcurrentRandomizedBST();
+        for (int i = 0; i < PINNED; i++) {
+            tree.insert(new LargeDepositor(pinnedAFM(i), "PINNED", "P" + (i % 10), 1000 + i, 10000));
+        }
+
+        // Misses print a message, keep them out of the way while the threads run
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        AtomicLong reads = new AtomicLong();
+        AtomicLong writes = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(writers + readers);
+        List<Map<Integer, LargeDepositor>> expected = new ArrayList<>();
+
+        for (int w = 0; w < writers; w++) {
+            Map<Integer, LargeDepositor> owned = new HashMap<>();
+            expected.add(owned);
+            int base = BASE_AFM + PINNED + w * RANGE;
+            Thread writer = new Thread(() -> {
+                try {
+                    Random random = new Random(base);
+                    long count = 0;
+                    while (running.get()) {
+                        int AFM = base + random.nextInt(RANGE);
+                        int op = random.nextInt(3);
+                        if (op == 0) {
+                            LargeDepositor item = new LargeDepositor(AFM, "W", "L" + random.nextInt(20),
+                                    random.nextInt(1000000), random.nextInt(20000));
+                            tree.insert(item);
+                            owned.putIfAbsent(AFM, item);
+                        } else if (op == 1) {
+                            double savings = random.nextInt(1000000);
+                            tree.updateSavings(AFM, savings);
+                            LargeDepositor old = owned.get(AFM);
+                            if (old != null) {
+                                owned.put(AFM, new LargeDepositor(AFM, old.firstNameCode, old.lastNameCode, savings, old.taxedIncome));
+                            }
+                        } else {
+                            tree.remove(AFM);
+                            owned.remove(AFM);
+                        }
+                        count++;
+                    }
+                    writes.addAndGet(count);
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    done.countDown();
+                }
+            }, "writer-" + w);
+            writer.start();
+        }
+
+        for (int r = 0; r < readers; r++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long count = 0;
+                    while (running.get()) {
+                        int i = random.nextInt(PINNED);
+                        LargeDepositor pinned = tree.searchByAFM(pinnedAFM(i));
+                        if (pinned == null || pinned.key() != pinnedAFM(i)) {
+                            throw new IllegalStateException("Pinned depositor " + pinnedAFM(i) + " not visible");
+                        }
+
+                        int AFM = BASE_AFM + PINNED + random.nextInt(Math.max(1, writers * RANGE));
+                        LargeDepositor item = tree.searchByAFM(AFM);
+                        if (item != null && item.key() != AFM) {
+                            throw new IllegalStateException("Search for " + AFM + " returned " + item);
+                        }
+
+                        double mean = tree.getMeanSavings();
+                        if (mean < 0 || mean > 1000000) {
+                            throw new IllegalStateException("Mean savings out of range: " + mean);
+                        }
+
+                        if (count % 1000 == 0) {
+                            tree.checkInvariants();
+                        }
+                        count++;
+                    }
+                    reads.addAndGet(count);
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    done.countDown();
+                }
+            }, "reader-" + r);
+            reader.start();
+        }
+
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        done.await();
+        System.setOut(stdout);
+
+        // Final state must match what the writers recorded
+        try {
+            tree.checkInvariants();
+            int expectedSize = PINNED;
+            double expectedSum = PINNED * 1000.0 + (PINNED - 1) * PINNED / 2.0;
+            for (Map<Integer, LargeDepositor> owned : expected) {
+                expectedSize += owned.size();
+                for (LargeDepositor item : owned.values()) {
+                    expectedSum += item.savings;
+                    LargeDepositor found = tree.searchByAFM(item.key());
+                    if (found == null || found.savings != item.savings || found.lastNameCode != item.lastNameCode) {
+                        throw new IllegalStateException("Expected " + item + " but found " + found);
+                    }
+                }
+            }
+            if (tree.size() != expectedSize) {
+                throw new IllegalStateException("Expected " + expectedSize + " depositors but found " + tree.size());
+            }
+            double mean = tree.getMeanSavings();
+            if (Math.abs(mean - expectedSum / expectedSize) > 1e-6 * Math.max(1.0, mean)) {
+                throw new IllegalStateException("Expected mean " + expectedSum / expectedSize + " but found " + mean);
+            }
+        } catch (Throwable t) {
+            failures.add(t);
+        }
+
+        System.out.println("Writes: " + writes.get() + ", reads: " + reads.get() + ", depositors: " + tree.size());
+        if (!failures.isEmpty()) {
+            for (Throwable t : failures) {
+                t.printStackTrace();
+            }
+            System.out.println("FAILED");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static int pinnedAFM(int i) {
+        return BASE_AFM + i;
+    }
+}
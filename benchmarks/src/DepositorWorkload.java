@@ -0,0 +1,105 @@
+import bench.Workload;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Workload of the JMH benchmarks (see bench.DepositorJmh) on one of the engines of
+ * DepositorBenchmark.newEngine, with the data of DepositorGenerator. It is in the default
+ * package, like the engines, and is loaded by name.
+ */
+public class DepositorWorkload implements Workload {
+
+    private static final int KEYS = 1 << 16;
+
+    private String engineName;
+    private long seed;
+    private List<LargeDepositor> depositors;
+    private Path file;
+    private TaxEvasionInterface engine; // Loaded from the file, for the queries
+    private int[] keys; // AFMs of random depositors
+    private String[] names; // Last names of random depositors
+    private LargeDepositor[] byKey; // The depositor of every key
+
+    @Override
+    public void setUp(String engine, int size, long seed) throws IOException {
+        this.engineName = engine;
+        this.seed = seed;
+        depositors = DepositorGenerator.generate(size, seed);
+        file = Files.createTempFile("depositors-" + size + "-", ".txt");
+        DepositorGenerator.write(file, size, seed);
+        this.engine = load();
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int count = Math.min(KEYS, size);
+        keys = new int[count];
+        names = new String[count];
+        byKey = new LargeDepositor[count];
+        for (int i = 0; i < count; i++) {
+            LargeDepositor depositor = depositors.get(random.nextInt(size));
+            keys[i] = depositor.key();
+            names[i] = depositor.getLastName();
+            byKey[i] = depositor;
+        }
+    }
+
+    @Override
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public int keys() {
+        return keys.length;
+    }
+
+    @Override
+    public Object insertAll() {
+        TaxEvasionInterface inserted = DepositorBenchmark.newEngine(engineName, seed);
+        for (LargeDepositor depositor : depositors) {
+            inserted.insert(depositor);
+        }
+        return inserted;
+    }
+
+    @Override
+    public TaxEvasionInterface load() {
+        TaxEvasionInterface loaded = DepositorBenchmark.newEngine(engineName, seed);
+        loaded.load(file.toString());
+        return loaded;
+    }
+
+    @Override
+    public Object searchByAFM(int i) {
+        return engine.searchByAFM(keys[i]);
+    }
+
+    @Override
+    public Object searchByLastName(int i) {
+        return engine.searchByLastName(names[i]);
+    }
+
+    @Override
+    public double meanSavings() {
+        return engine.getMeanSavings();
+    }
+
+    @Override
+    public void printTop(int k) {
+        engine.printTopLargeDepositors(k);
+    }
+
+    @Override
+    public void remove(int i) {
+        engine.remove(keys[i]);
+    }
+
+    @Override
+    public void insert(int i) {
+        // A copy, so that an engine that updates in place never shares it with another engine
+        engine.insert(byKey[i].copy());
+    }
+}
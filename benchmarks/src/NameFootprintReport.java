@@ -0,0 +1,78 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Heap footprint of the depositors before and after the names were dictionary encoded
+ * (see NameDictionary), on synthetic data from DepositorGenerator.
+ *
+ * "before" holds the depositors as LargeDepositor used to: two String fields per depositor,
+ * with a fresh String for every name of every line, as the file parser created them. "after"
+ * is the current LargeDepositor with two int codes, plus the shared dictionary. Each is the
+ * growth of the used heap after a full collection, so it includes the array of depositors.
+ *
+ * Usage: java -Xmx3g -cp benchmarks/target/benchmarks.jar NameFootprintReport [count] [seed]   (count defaults to 10000000)
+ */
+public class NameFootprintReport {
+
+    // The old layout of LargeDepositor
+    private static final class StringNamedDepositor {
+        final int AFM;
+        final String firstName;
+        final String lastName;
+        final double savings;
+        final double taxedIncome;
+
+        StringNamedDepositor(int AFM, String firstName, String lastName, double savings, double taxedIncome) {
+            this.AFM = AFM;
+            this.firstName = firstName;
+            this.lastName = lastName;
+            this.savings = savings;
+            this.taxedIncome = taxedIncome;
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1L;
+
+        long base = usedHeap();
+        LargeDepositor[] depositors = DepositorGenerator.generate(count, seed).toArray(new LargeDepositor[0]);
+        long after = usedHeap() - base;
+
+        StringNamedDepositor[] old = new StringNamedDepositor[count];
+        for (int i = 0; i < count; i++) {
+            LargeDepositor item = depositors[i];
+            old[i] = new StringNamedDepositor(item.key(), copy(item.getFirstName()), copy(item.getLastName()),
+                    item.getSavings(), item.getTaxedIncome());
+        }
+        long before = usedHeap() - base - after;
+
+        NameDictionary names = NameDictionary.SHARED;
+        System.out.printf("%d depositors, %d distinct names (%d bytes of UTF-8, about %d KB of dictionary)%n",
+                count, names.size(), names.arenaBytes(), names.estimatedBytes() / 1024);
+        System.out.printf("%-8s %12s %16s%n", "layout", "heap MB", "bytes/depositor");
+        System.out.printf("%-8s %12.1f %16.1f%n", "before", before / 1e6, (double) before / count);
+        System.out.printf("%-8s %12.1f %16.1f%n", "after", after / 1e6, (double) after / count);
+        System.out.printf("saved %.1f MB (%.0f%%)%n", (before - after) / 1e6, 100.0 * (before - after) / before);
+
+        // Keep both layouts reachable until both were measured
+        if (count > 0 && depositors[count - 1].key() != old[count - 1].AFM) {
+            throw new AssertionError();
+        }
+    }
+
+    // A String with its own bytes, as decoding a line of the file gave
+    private static String copy(String name) {
+        return new String(name.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    // Used heap after a full collection
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
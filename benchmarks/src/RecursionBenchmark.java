@@ -0,0 +1,147 @@
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Compares the recursive and the iterative implementations of RandomizedBST
+ * (searchByAFM, insert, remove and the in-order traversal), see RandomizedBST.setIterative.
+ *
+ * Both modes use the same seed, so they build the same trees and the timings compare the
+ * code paths only. A second part builds a degenerate (list-shaped) tree and runs a lookup
+ * on a thread with a small stack in both modes, to show where the recursion gives up.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar RecursionBenchmark [size ...]
+ */
+public class RecursionBenchmark {
+
+    private static final long SEED = 20230611L;
+    private static final int ROUNDS = 5;
+    private static final int DEEP_TREE_SIZE = 20000;
+    private static final long SMALL_STACK = 256 * 1024;
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] sizes = args.length == 0 ? new int[] {100000, 1000000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        // Warm up both code paths before measuring
+        run(50000, true, false);
+        run(50000, false, false);
+
+        System.out.printf("%-10s %-10s %12s %12s %12s %12s%n",
+                "size", "mode", "insert ns", "search ns", "inorder ns", "remove ns");
+        for (int size : sizes) {
+            for (int round = 0; round < ROUNDS; round++) {
+                run(size, false, round == ROUNDS - 1);
+                run(size, true, round == ROUNDS - 1);
+            }
+        }
+
+        deepTree();
+    }
+
+    /**
+     * Inserts 'size' depositors, searches all of them, walks the tree in order and removes
+     * half of them, and prints the average time per operation of each phase.
+     */
+    private static void run(int size, boolean iterative, boolean report) {
+        RandomizedBST tree = new RandomizedBST(SEED);
+        tree.setIterative(iterative);
+        int[] keys = shuffledKeys(size);
+
+        long start = System.nanoTime();
+        for (int key : keys) {
+            tree.insert(new LargeDepositor(key, "FIRST", "LAST", key % 100000, key % 20000));
+        }
+        long insert = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long checksum = 0;
+        for (int key : keys) {
+            checksum += tree.searchByAFM(key).key();
+        }
+        long search = System.nanoTime() - start;
+
+        long[] visited = new long[1];
+        start = System.nanoTime();
+        tree.forEachByAFM(item -> visited[0] += item.key());
+        long inorder = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < size; i += 2) {
+            tree.remove(keys[i]);
+        }
+        long remove = System.nanoTime() - start;
+
+        if (checksum != visited[0]) {
+            throw new IllegalStateException("Search and traversal disagree");
+        }
+        if (report) {
+            System.out.printf("%-10d %-10s %12.1f %12.1f %12.1f %12.1f%n", size,
+                    iterative ? "iterative" : "recursive", (double) insert / size, (double) search / size,
+                    (double) inorder / size, (double) remove / ((size + 1) / 2));
+        }
+    }
+
+    // The keys 0..size-1 in a reproducible random order
+    private static int[] shuffledKeys(int size) {
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+        return keys;
+    }
+
+    /**
+     * Builds a list-shaped tree (a generator that never picks root insertion, fed with sorted
+     * keys) and searches its deepest key on a thread with a small stack in both modes.
+     */
+    private static void deepTree() throws InterruptedException {
+        // Always answers bound - 1, so insertAsRoot never moves the new item to the root
+        RandomGenerator adversary = new RandomGenerator() {
+            @Override
+            public long nextLong() {
+                return Long.MAX_VALUE;
+            }
+
+            @Override
+            public int nextInt(int bound) {
+                return bound - 1;
+            }
+        };
+
+        // The secondary indexes share the generator, random names and savings keep them shallow
+        SplittableRandom random = new SplittableRandom(SEED);
+        RandomizedBST tree = new RandomizedBST(adversary);
+        for (int key = 0; key < DEEP_TREE_SIZE; key++) {
+            tree.insert(new LargeDepositor(key, "FIRST", "LAST" + random.nextInt(1000000),
+                    random.nextInt(1000000), 10000));
+        }
+
+        System.out.println();
+        System.out.println("Degenerate tree of depth " + DEEP_TREE_SIZE + ", lookup on a "
+                + SMALL_STACK / 1024 + " KB stack:");
+        for (boolean iterative : new boolean[] {false, true}) {
+            String[] outcome = new String[1];
+            Thread thread = new Thread(null, () -> {
+                tree.setIterative(iterative);
+                try {
+                    LargeDepositor found = tree.searchByAFM(DEEP_TREE_SIZE - 1);
+                    outcome[0] = "found AFM " + found.key();
+                } catch (StackOverflowError e) {
+                    outcome[0] = "StackOverflowError";
+                }
+            }, "deep-tree", SMALL_STACK);
+            thread.start();
+            thread.join();
+            System.out.println("  " + (iterative ? "iterative" : "recursive") + ": " + outcome[0]);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the split/join set operations of RandomizedBST (union, intersection, difference)
+ * with the baseline of applying the other tree one depositor at a time (insert or remove).
+ *
+ * The two trees have 'size' depositors each and share half of their AFMs. Every measurement
+ * starts from freshly loaded trees; the printed time is the best of a few rounds.
+ *
+ * Usage: java -cp benchmarks/target/benchmarks.jar SetOperationBenchmark [size]
+ */
+public class SetOperationBenchmark {
+
+    private static final long SEED = 20230611L;
+    private static final int ROUNDS = 5;
+
+    // One way of combining the first tree with the second
+    private interface Operation {
+        void apply(RandomizedBST tree, RandomizedBST other);
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        // The second data set starts half way through the first one's AFM sequence
+        List<LargeDepositor> first = DepositorGenerator.generate(size, SEED);
+        List<LargeDepositor> second = DepositorGenerator.generate(size, SEED + size / 2);
+
+        System.out.println("size " + size + ", " + Runtime.getRuntime().availableProcessors() + " processors");
+        System.out.printf("%-14s %14s %14s %10s%n", "operation", "baseline ms", "split/join ms", "speedup");
+        report("union", first, second,
+                (tree, other) -> other.forEachByAFM(item -> tree.insert(item.copy())),
+                RandomizedBST::union);
+        report("intersection", first, second,
+                (tree, other) -> {
+                    List<Integer> absent = new ArrayList<>();
+                    tree.forEachByAFM(item -> {
+                        if (other.searchByAFM(item.key()) == null) {
+                            absent.add(item.key());
+                        }
+                    });
+                    for (int AFM : absent) {
+                        tree.remove(AFM);
+                    }
+                },
+                RandomizedBST::intersection);
+        report("difference", first, second,
+                (tree, other) -> other.forEachByAFM(item -> tree.remove(item.key())),
+                RandomizedBST::difference);
+    }
+
+    private static void report(String name, List<LargeDepositor> first, List<LargeDepositor> second,
+                               Operation baseline, Operation setOperation) {
+        // Warm up both versions once, then keep the best round of each
+        run(first, second, baseline);
+        run(first, second, setOperation);
+        long baselineNanos = Long.MAX_VALUE;
+        long setOperationNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            baselineNanos = Math.min(baselineNanos, run(first, second, baseline));
+            setOperationNanos = Math.min(setOperationNanos, run(first, second, setOperation));
+        }
+        System.out.printf("%-14s %14.1f %14.1f %9.1fx%n", name, baselineNanos / 1e6, setOperationNanos / 1e6,
+                (double) baselineNanos / setOperationNanos);
+    }
+
+    // Time one operation on freshly loaded trees, with the "already exists"/"not found" messages discarded
+    private static long run(List<LargeDepositor> first, List<LargeDepositor> second, Operation operation) {
+        RandomizedBST tree = load(first);
+        RandomizedBST other = load(second);
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            long start = System.nanoTime();
+            operation.apply(tree, other);
+            return System.nanoTime() - start;
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private static RandomizedBST load(List<LargeDepositor> depositors) {
+        RandomizedBST tree = new RandomizedBST(SEED);
+        List<LargeDepositor> copies = new ArrayList<>(depositors.size());
+        for (LargeDepositor item : depositors) {
+            copies.add(item.copy());
+        }
+        tree.bulkLoad(copies);
+        return tree;
+    }
+}
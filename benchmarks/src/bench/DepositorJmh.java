@@ -0,0 +1,169 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the TaxEvasionInterface engines, for every engine and for 10^4 to 10^7
+ * depositors. Every single operation is measured both as throughput and as sampled latency
+ * (SampleTime, which reports the p50 to p99.99 percentiles), over keys and last names of random
+ * depositors; building a whole engine (insertAll, load) is measured as single shots.
+ *
+ * remove and insert are measured on their own: before every call, outside the measured time,
+ * the depositor that the previous remove took out is put back, or the depositor that the next
+ * insert adds is taken out, so every call sees the full engine.
+ *
+ * Run with the gc profiler through JmhRunner: java -jar benchmarks/target/benchmarks.jar
+ * (any JMH option can be added, e.g. -p engine=bst,bplus -p size=1000000).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DepositorJmh {
+
+    private static final int TOP_K = 100;
+
+    @Param({"bst", "bplus", "concurrent", "columnar", "sharded"})
+    public String engine;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"1"})
+    public long seed;
+
+    // Puts back the depositor that the last remove took out, before the next call
+    @State(Scope.Thread)
+    public static class Removed {
+        int key = -1;
+
+        @Setup(Level.Invocation)
+        public void restore(DepositorJmh benchmark) {
+            if (key >= 0) {
+                benchmark.workload.insert(key);
+                key = -1;
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void restoreLast(DepositorJmh benchmark) {
+            restore(benchmark);
+        }
+    }
+
+    // Takes out the depositor that the next insert adds, before the call
+    @State(Scope.Thread)
+    public static class Absent {
+        int key = -1;
+        boolean inserted = true;
+
+        @Setup(Level.Invocation)
+        public void takeOut(DepositorJmh benchmark) {
+            key = benchmark.next();
+            benchmark.workload.remove(key);
+            inserted = false;
+        }
+
+        @TearDown(Level.Iteration)
+        public void putBack(DepositorJmh benchmark) {
+            if (!inserted) {
+                benchmark.workload.insert(key);
+                inserted = true;
+            }
+        }
+    }
+
+    private Workload workload;
+    private PrintStream stdout;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        workload = (Workload) Class.forName("DepositorWorkload").getDeclaredConstructor().newInstance();
+        workload.setUp(engine, size, seed);
+        // The printed lines go nowhere, what is measured is the query and the formatting
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        System.setOut(stdout);
+        workload.tearDown();
+    }
+
+    // The next prepared key, cycling through all of them
+    private int next() {
+        int i = next;
+        next = i + 1 == workload.keys() ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Object searchByAFM() {
+        return workload.searchByAFM(next());
+    }
+
+    @Benchmark
+    public Object searchByLastName() {
+        return workload.searchByLastName(next());
+    }
+
+    @Benchmark
+    public double getMeanSavings() {
+        return workload.meanSavings();
+    }
+
+    @Benchmark
+    public void printTop100() {
+        workload.printTop(TOP_K);
+    }
+
+    @Benchmark
+    public void remove(Removed removed) {
+        removed.key = next();
+        workload.remove(removed.key);
+    }
+
+    @Benchmark
+    public void insert(Absent absent) {
+        workload.insert(absent.key);
+        absent.inserted = true;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public Object insertAll() {
+        return workload.insertAll();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public Object load() {
+        return workload.load();
+    }
+}
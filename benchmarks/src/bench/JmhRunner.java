@@ -0,0 +1,29 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the gc profiler, so that every result comes with its allocation
+ * rate (gc.alloc.rate.norm, bytes per operation) and its collections. The arguments are JMH
+ * command line options; without a benchmark pattern all of DepositorJmh runs.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options, e.g. -p engine=bst -p size=10000000]
+ */
+public class JmhRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options);
+        if (options.getIncludes().isEmpty()) {
+            builder.include(DepositorJmh.class.getSimpleName());
+        }
+        builder.addProfiler(GCProfiler.class);
+        new Runner(builder.build()).run();
+    }
+}
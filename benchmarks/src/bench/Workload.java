@@ -0,0 +1,48 @@
+package bench;
+
+import java.io.IOException;
+
+/**
+ * The operations that DepositorJmh measures on one engine, implemented by DepositorWorkload.
+ * The engines are in the default package, which JMH does not accept for benchmarks and which a
+ * named package cannot import, so the benchmarks reach them through this interface.
+ */
+public interface Workload {
+
+    /**
+     * Generates the depositors, writes them to a temporary file and loads them into an engine.
+     *
+     * @param engine The engine name, as for DepositorBenchmark.newEngine.
+     * @param size The number of depositors.
+     * @param seed The seed of the data and of the engine.
+     * @throws IOException If the file cannot be written or loaded.
+     */
+    void setUp(String engine, int size, long seed) throws IOException;
+
+    // Deletes the temporary file
+    void tearDown() throws IOException;
+
+    // Number of prepared keys and names, the index i of the queries below is taken modulo this
+    int keys();
+
+    // Inserts every depositor into a new engine and returns the engine
+    Object insertAll();
+
+    // Loads the file into a new engine and returns the engine
+    Object load();
+
+    Object searchByAFM(int i);
+
+    Object searchByLastName(int i);
+
+    double meanSavings();
+
+    // Prints the top k depositors to System.out, which DepositorJmh discards
+    void printTop(int k);
+
+    // Removes the depositor of the i-th key, which must be in the engine
+    void remove(int i);
+
+    // Inserts the depositor of the i-th key again, which must not be in the engine
+    void insert(int i);
+}
@@ -0,0 +1,706 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+
+/**
+ * B+-tree implementation of TaxEvasionInterface, for trees much larger than the CPU caches.
+ *
+ * A node holds up to 'nodeCapacity' entries (64 by default) in arrays: a leaf its AFMs as a
+ * sorted int[] and the depositors next to them, an inner node its separator AFMs and its
+ * children. A lookup therefore touches about log_64(n) nodes and binary searches a contiguous
+ * int[] in each, instead of following log2(n) pointers of a binary tree. The leaves are linked
+ * left to right, so printByAFM and range scans read the depositors leaf by leaf.
+ *
+ * Every node keeps the number of depositors and the sum of their savings below it, so the mean
+ * of all depositors is read at the root and the mean of an AFM range costs O(log n).
+ * Last name searches and the suspicion ranking use the same secondary indexes as RandomizedBST.
+ *
+ * Nodes other than the root are kept at least half full: insert splits a full node, remove
+ * borrows from a sibling or merges with it.
+ */
+public class BPlusTree implements TaxEvasionInterface {
+
+    public static final int DEFAULT_NODE_CAPACITY = 64;
+
+    // Number of depositors and their total savings below a node
+    private abstract static class Node {
+        int count; // Entries of a leaf, children of an inner node
+        int size;
+        double sumSavings;
+    }
+
+    private static final class Leaf extends Node {
+        final int[] keys;
+        final LargeDepositor[] items;
+        Leaf next; // The leaf to the right, null for the last one
+
+        Leaf(int capacity) {
+            // One spare entry: a leaf overflows by one before it is split
+            keys = new int[capacity + 1];
+            items = new LargeDepositor[capacity + 1];
+        }
+    }
+
+    private static final class Inner extends Node {
+        // keys[i] is the smallest AFM under children[i + 1], for i < count - 1
+        final int[] keys;
+        final Node[] children;
+
+        Inner(int capacity) {
+            keys = new int[capacity];
+            children = new Node[capacity + 1];
+        }
+    }
+
+    private final int nodeCapacity;
+    private final int minimum; // Fewest entries of a node other than the root
+    private Node root;
+    private final LastNameTrie lastNameIndex; // Secondary index ordered by (lastName, AFM)
+    private final DepositorIndex suspicionIndex; // Secondary index ordered by (suspicion, AFM)
+
+    // Initialize the tree, the suspicion index draws from ThreadLocalRandom
+    public BPlusTree() {
+        this(DEFAULT_NODE_CAPACITY, null);
+    }
+
+    // Initialize the tree with a seeded suspicion index, so that runs can be reproduced
+    public BPlusTree(long seed) {
+        this(DEFAULT_NODE_CAPACITY, new SplittableRandom(seed));
+    }
+
+    /**
+     * Initialize the tree.
+     *
+     * @param nodeCapacity The most entries of a node, at least 4.
+     * @param random The source of randomness of the suspicion index, null for ThreadLocalRandom.
+     */
+    public BPlusTree(int nodeCapacity, SplittableRandom random) {
+        if (nodeCapacity < 4) {
+            throw new IllegalArgumentException("Node capacity must be at least 4: " + nodeCapacity);
+        }
+        this.nodeCapacity = nodeCapacity;
+        this.minimum = nodeCapacity / 2;
+        this.root = new Leaf(nodeCapacity);
+        this.lastNameIndex = new LastNameTrie();
+        this.suspicionIndex = new DepositorIndex(DepositorIndex.BY_SUSPICION, split(random));
+    }
+
+    private static RandomGenerator split(SplittableRandom random) {
+        return random == null ? null : random.split();
+    }
+
+    // Position of the first key >= key in keys[0..count), count if there is none
+    private static int lowerBound(int[] keys, int count, int key) {
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // The child of an inner node whose AFMs include the key: the number of separators <= key
+    private static int childIndex(Inner inner, int key) {
+        return lowerBound(inner.keys, inner.count - 1, key == Integer.MAX_VALUE ? key : key + 1);
+    }
+
+    // The leaf whose AFM range includes the key
+    private Leaf leafFor(int key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[childIndex(inner, key)];
+        }
+        return (Leaf) node;
+    }
+
+    // Find the depositor with the given AFM without printing anything, null if absent
+    private LargeDepositor find(int AFM) {
+        Leaf leaf = leafFor(AFM);
+        int i = lowerBound(leaf.keys, leaf.count, AFM);
+        return i < leaf.count && leaf.keys[i] == AFM ? leaf.items[i] : null;
+    }
+
+    // Smallest AFM under a node
+    private static int firstKey(Node node) {
+        while (node instanceof Inner) {
+            node = ((Inner) node).children[0];
+        }
+        return ((Leaf) node).keys[0];
+    }
+
+    // Insert new depositor to the tree
+    @Override
+    public void insert(LargeDepositor item) {
+        if (find(item.key()) != null) {
+            System.out.println("Depositor with AFM " + item.key() + " already exists.");
+            return;
+        }
+
+        Node sibling = insert(root, item);
+        if (sibling != null) {
+            // The root was split, the tree grows by one level
+            Inner top = new Inner(nodeCapacity);
+            top.children[0] = root;
+            top.children[1] = sibling;
+            top.keys[0] = firstKey(sibling);
+            top.count = 2;
+            top.size = root.size + sibling.size;
+            top.sumSavings = root.sumSavings + sibling.sumSavings;
+            root = top;
+        }
+        lastNameIndex.insert(item);
+        suspicionIndex.insert(item);
+    }
+
+    /**
+     * Inserts a depositor whose AFM is not in the tree into a subtree.
+     *
+     * @param node The root of the subtree.
+     * @param item The depositor.
+     * @return The new right sibling of the node if it had to be split, otherwise null.
+     */
+    private Node insert(Node node, LargeDepositor item) {
+        node.size++;
+        node.sumSavings += item.getSavings();
+
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = lowerBound(leaf.keys, leaf.count, item.key());
+            System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.count - i);
+            System.arraycopy(leaf.items, i, leaf.items, i + 1, leaf.count - i);
+            leaf.keys[i] = item.key();
+            leaf.items[i] = item;
+            leaf.count++;
+            return leaf.count > nodeCapacity ? splitLeaf(leaf) : null;
+        }
+
+        Inner inner = (Inner) node;
+        int i = childIndex(inner, item.key());
+        Node sibling = insert(inner.children[i], item);
+        if (sibling == null) {
+            return null;
+        }
+        System.arraycopy(inner.keys, i, inner.keys, i + 1, inner.count - 1 - i);
+        System.arraycopy(inner.children, i + 1, inner.children, i + 2, inner.count - 1 - i);
+        inner.keys[i] = firstKey(sibling);
+        inner.children[i + 1] = sibling;
+        inner.count++;
+        return inner.count > nodeCapacity ? splitInner(inner) : null;
+    }
+
+    // Move the upper half of an overfull leaf to a new leaf, which is returned
+    private Leaf splitLeaf(Leaf leaf) {
+        Leaf right = new Leaf(nodeCapacity);
+        int keep = leaf.count / 2;
+        right.count = leaf.count - keep;
+        System.arraycopy(leaf.keys, keep, right.keys, 0, right.count);
+        System.arraycopy(leaf.items, keep, right.items, 0, right.count);
+        Arrays.fill(leaf.items, keep, leaf.count, null);
+        leaf.count = keep;
+
+        right.next = leaf.next;
+        leaf.next = right;
+        right.size = right.count;
+        right.sumSavings = sumSavings(right);
+        leaf.size = leaf.count;
+        leaf.sumSavings = sumSavings(leaf);
+        return right;
+    }
+
+    // Move the upper half of an overfull inner node to a new node, which is returned
+    private Inner splitInner(Inner inner) {
+        Inner right = new Inner(nodeCapacity);
+        int keep = inner.count / 2;
+        right.count = inner.count - keep;
+        System.arraycopy(inner.children, keep, right.children, 0, right.count);
+        // keys[keep - 1] separates the two halves and moves up to the parent
+        System.arraycopy(inner.keys, keep, right.keys, 0, right.count - 1);
+        Arrays.fill(inner.children, keep, inner.count, null);
+        inner.count = keep;
+
+        updateTotals(inner);
+        updateTotals(right);
+        return right;
+    }
+
+    private static double sumSavings(Leaf leaf) {
+        double sum = 0.0;
+        for (int i = 0; i < leaf.count; i++) {
+            sum += leaf.items[i].getSavings();
+        }
+        return sum;
+    }
+
+    // Recompute the size and savings of an inner node from its children
+    private static void updateTotals(Inner inner) {
+        int size = 0;
+        double sum = 0.0;
+        for (int i = 0; i < inner.count; i++) {
+            size += inner.children[i].size;
+            sum += inner.children[i].sumSavings;
+        }
+        inner.size = size;
+        inner.sumSavings = sum;
+    }
+
+    // Load data from file; into an empty tree the leaves are built directly from the sorted depositors
+    @Override
+    public void load(String filename) {
+        DepositorFileParser.Result parsed;
+        try {
+            parsed = new DepositorFileParser().parse(Paths.get(filename));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for (DepositorFileParser.ParseError error : parsed.errors) {
+            System.out.println("Skipped malformed line in " + filename + ": " + error);
+        }
+        bulkLoad(parsed.depositors);
+    }
+
+    /**
+     * Adds many depositors at once. The new depositors are sorted and merged with the leaves,
+     * and the tree is rebuilt bottom-up with full nodes in O(n + k log k), instead of k inserts.
+     * A depositor whose AFM is already in the tree (or earlier in the list) is skipped with the
+     * same message as insert.
+     *
+     * @param depositors The depositors to add, in any order.
+     */
+    public void bulkLoad(List<LargeDepositor> depositors) {
+        LargeDepositor[] incoming = depositors.toArray(new LargeDepositor[0]);
+        // Stable sort: among duplicates of the input, the first one in file order is kept
+        Arrays.sort(incoming, Comparator.comparingInt(LargeDepositor::key));
+
+        LargeDepositor[] merged = new LargeDepositor[root.size + incoming.length];
+        LargeDepositor[] added = new LargeDepositor[incoming.length];
+        int count = 0;
+        int addedCount = 0;
+        Leaf leaf = leafFor(Integer.MIN_VALUE);
+        int i = 0;
+        int j = 0;
+
+        // Merge the leaves with the sorted input; the depositor already in the tree wins a tie
+        while (j < incoming.length) {
+            while (leaf != null && i == leaf.count) {
+                leaf = leaf.next;
+                i = 0;
+            }
+            if (leaf != null && leaf.keys[i] <= incoming[j].key()) {
+                merged[count++] = leaf.items[i++];
+            } else if (count > 0 && merged[count - 1].key() == incoming[j].key()) {
+                System.out.println("Depositor with AFM " + incoming[j].key() + " already exists.");
+                j++;
+            } else {
+                merged[count++] = incoming[j];
+                added[addedCount++] = incoming[j++];
+            }
+        }
+        for (; leaf != null; leaf = leaf.next, i = 0) {
+            while (i < leaf.count) {
+                merged[count++] = leaf.items[i++];
+            }
+        }
+
+        root = build(merged, count);
+        lastNameIndex.bulkLoad(added, addedCount);
+        suspicionIndex.bulkLoad(added, addedCount);
+    }
+
+    /**
+     * Builds the tree bottom-up from depositors in AFM order. Each level has as few nodes as
+     * possible, with the entries spread evenly so that every node is at least half full.
+     *
+     * @param sorted The depositors, sorted[0..count) in strictly increasing AFM order.
+     * @param count The number of depositors.
+     * @return The root of the new tree.
+     */
+    private Node build(LargeDepositor[] sorted, int count) {
+        int leaves = Math.max(1, (count + nodeCapacity - 1) / nodeCapacity);
+        Node[] level = new Node[leaves];
+        Leaf previous = null;
+        for (int l = 0, from = 0; l < leaves; l++) {
+            int to = (int) ((long) count * (l + 1) / leaves);
+            Leaf leaf = new Leaf(nodeCapacity);
+            for (int i = from; i < to; i++) {
+                leaf.keys[leaf.count] = sorted[i].key();
+                leaf.items[leaf.count++] = sorted[i];
+            }
+            leaf.size = leaf.count;
+            leaf.sumSavings = sumSavings(leaf);
+            if (previous != null) {
+                previous.next = leaf;
+            }
+            previous = leaf;
+            level[l] = leaf;
+            from = to;
+        }
+
+        while (level.length > 1) {
+            int parents = (level.length + nodeCapacity - 1) / nodeCapacity;
+            Node[] above = new Node[parents];
+            for (int p = 0, from = 0; p < parents; p++) {
+                int to = (int) ((long) level.length * (p + 1) / parents);
+                Inner inner = new Inner(nodeCapacity);
+                for (int c = from; c < to; c++) {
+                    if (c > from) {
+                        inner.keys[inner.count - 1] = firstKey(level[c]);
+                    }
+                    inner.children[inner.count++] = level[c];
+                }
+                updateTotals(inner);
+                above[p] = inner;
+                from = to;
+            }
+            level = above;
+        }
+        return level[0];
+    }
+
+    @Override
+    public boolean updateSavings(int AFM, double savings) {
+        LargeDepositor item = find(AFM);
+        if (item == null) {
+            return false;
+        }
+
+        double delta = savings - item.getSavings();
+        Node node = root;
+        while (true) {
+            node.sumSavings += delta;
+            if (node instanceof Leaf) {
+                break;
+            }
+            Inner inner = (Inner) node;
+            node = inner.children[childIndex(inner, AFM)];
+        }
+        // The suspicion score depends on the savings, so the depositor moves in that index
+        suspicionIndex.remove(item);
+        item.setSavings(savings);
+        suspicionIndex.insert(item);
+        return true;
+    }
+
+    // Search for a depositor by AFM
+    @Override
+    public LargeDepositor searchByAFM(int AFM) {
+        LargeDepositor item = find(AFM);
+        if (item == null) {
+            System.out.println("Depositor with AFM " + AFM + " not found.");
+        }
+        return item;
+    }
+
+    // Search depositors by last name, in AFM order; null if there is none
+    @Override
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name) {
+        StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueArrayImpl<>();
+        lastNameIndex.collectExact(NameDictionary.SHARED.code(last_name), Integer.MAX_VALUE, result);
+        return result.size() > 0 ? result : null;
+    }
+
+    // Remove depositor by AFM
+    @Override
+    public void remove(int AFM) {
+        LargeDepositor item = find(AFM);
+        if (item == null) {
+            System.out.println("Depositor with AFM " + AFM + " not found.");
+            return;
+        }
+
+        remove(root, item);
+        if (root instanceof Inner && root.count == 1) {
+            // The root's children were merged into one, the tree shrinks by one level
+            root = ((Inner) root).children[0];
+        }
+        lastNameIndex.remove(item);
+        suspicionIndex.remove(item);
+    }
+
+    // Remove a depositor that is in the subtree; the caller fixes the node if it underflows
+    private void remove(Node node, LargeDepositor item) {
+        node.size--;
+        node.sumSavings -= item.getSavings();
+
+        if (node instanceof Leaf) {
+            Leaf leaf = (Leaf) node;
+            int i = lowerBound(leaf.keys, leaf.count, item.key());
+            System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - 1 - i);
+            System.arraycopy(leaf.items, i + 1, leaf.items, i, leaf.count - 1 - i);
+            leaf.items[--leaf.count] = null;
+            return;
+        }
+
+        Inner inner = (Inner) node;
+        int i = childIndex(inner, item.key());
+        Node child = inner.children[i];
+        remove(child, item);
+        if (child.count < minimum) {
+            rebalance(inner, i);
+        }
+    }
+
+    /**
+     * Refills a child that fell below half full: it borrows an entry from a sibling that can
+     * spare one, otherwise it is merged with a sibling.
+     *
+     * @param parent The parent of the child.
+     * @param i The position of the child in the parent.
+     */
+    private void rebalance(Inner parent, int i) {
+        if (i > 0 && parent.children[i - 1].count > minimum) {
+            borrowFromLeft(parent, i);
+        } else if (i + 1 < parent.count && parent.children[i + 1].count > minimum) {
+            borrowFromRight(parent, i);
+        } else if (i > 0) {
+            merge(parent, i - 1);
+        } else {
+            merge(parent, i);
+        }
+    }
+
+    // Move the last entry of the left sibling to the front of child i
+    private void borrowFromLeft(Inner parent, int i) {
+        Node child = parent.children[i];
+        Node left = parent.children[i - 1];
+        int movedSize;
+        double movedSavings;
+
+        if (child instanceof Leaf) {
+            Leaf to = (Leaf) child;
+            Leaf from = (Leaf) left;
+            System.arraycopy(to.keys, 0, to.keys, 1, to.count);
+            System.arraycopy(to.items, 0, to.items, 1, to.count);
+            to.keys[0] = from.keys[from.count - 1];
+            to.items[0] = from.items[from.count - 1];
+            from.items[--from.count] = null;
+            to.count++;
+            movedSize = 1;
+            movedSavings = to.items[0].getSavings();
+            parent.keys[i - 1] = to.keys[0];
+        } else {
+            Inner to = (Inner) child;
+            Inner from = (Inner) left;
+            System.arraycopy(to.keys, 0, to.keys, 1, to.count - 1);
+            System.arraycopy(to.children, 0, to.children, 1, to.count);
+            to.children[0] = from.children[from.count - 1];
+            to.keys[0] = parent.keys[i - 1];
+            parent.keys[i - 1] = from.keys[from.count - 2];
+            from.children[--from.count] = null;
+            to.count++;
+            movedSize = to.children[0].size;
+            movedSavings = to.children[0].sumSavings;
+        }
+        left.size -= movedSize;
+        left.sumSavings -= movedSavings;
+        child.size += movedSize;
+        child.sumSavings += movedSavings;
+    }
+
+    // Move the first entry of the right sibling to the end of child i
+    private void borrowFromRight(Inner parent, int i) {
+        Node child = parent.children[i];
+        Node right = parent.children[i + 1];
+        int movedSize;
+        double movedSavings;
+
+        if (child instanceof Leaf) {
+            Leaf to = (Leaf) child;
+            Leaf from = (Leaf) right;
+            to.keys[to.count] = from.keys[0];
+            to.items[to.count] = from.items[0];
+            movedSize = 1;
+            movedSavings = from.items[0].getSavings();
+            to.count++;
+            System.arraycopy(from.keys, 1, from.keys, 0, from.count - 1);
+            System.arraycopy(from.items, 1, from.items, 0, from.count - 1);
+            from.items[--from.count] = null;
+            parent.keys[i] = from.keys[0];
+        } else {
+            Inner to = (Inner) child;
+            Inner from = (Inner) right;
+            to.children[to.count] = from.children[0];
+            to.keys[to.count - 1] = parent.keys[i];
+            parent.keys[i] = from.keys[0];
+            movedSize = from.children[0].size;
+            movedSavings = from.children[0].sumSavings;
+            to.count++;
+            System.arraycopy(from.keys, 1, from.keys, 0, from.count - 2);
+            System.arraycopy(from.children, 1, from.children, 0, from.count - 1);
+            from.children[--from.count] = null;
+        }
+        right.size -= movedSize;
+        right.sumSavings -= movedSavings;
+        child.size += movedSize;
+        child.sumSavings += movedSavings;
+    }
+
+    // Merge child i + 1 into child i and drop it from the parent
+    private void merge(Inner parent, int i) {
+        Node left = parent.children[i];
+        Node right = parent.children[i + 1];
+
+        if (left instanceof Leaf) {
+            Leaf to = (Leaf) left;
+            Leaf from = (Leaf) right;
+            System.arraycopy(from.keys, 0, to.keys, to.count, from.count);
+            System.arraycopy(from.items, 0, to.items, to.count, from.count);
+            to.count += from.count;
+            to.next = from.next;
+        } else {
+            Inner to = (Inner) left;
+            Inner from = (Inner) right;
+            to.keys[to.count - 1] = parent.keys[i];
+            System.arraycopy(from.keys, 0, to.keys, to.count, from.count - 1);
+            System.arraycopy(from.children, 0, to.children, to.count, from.count);
+            to.count += from.count;
+        }
+        left.size += right.size;
+        left.sumSavings += right.sumSavings;
+
+        System.arraycopy(parent.keys, i + 1, parent.keys, i, parent.count - 2 - i);
+        System.arraycopy(parent.children, i + 2, parent.children, i + 1, parent.count - 2 - i);
+        parent.children[--parent.count] = null;
+    }
+
+    // Number of depositors
+    public int size() {
+        return root.size;
+    }
+
+    // Calculate mean savings of all depositors in O(1) from the totals kept at the root
+    @Override
+    public double getMeanSavings() {
+        return root.size == 0 ? 0.0 : root.sumSavings / root.size;
+    }
+
+    /**
+     * Mean savings of the depositors with lowAFM <= AFM <= highAFM, in O(log n) from the
+     * totals of the nodes that lie completely inside the range.
+     *
+     * @param lowAFM The smallest AFM of the range (inclusive).
+     * @param highAFM The largest AFM of the range (inclusive).
+     * @return The mean, or 0.0 if the range is empty.
+     */
+    public double getMeanSavings(int lowAFM, int highAFM) {
+        if (lowAFM > highAFM) {
+            return 0.0;
+        }
+        double[] upTo = totalsBelow(highAFM, true);
+        double[] before = totalsBelow(lowAFM, false);
+        double count = upTo[0] - before[0];
+        return count == 0 ? 0.0 : (upTo[1] - before[1]) / count;
+    }
+
+    /**
+     * Counts and sums the savings of the depositors with an AFM below the key.
+     *
+     * @param key The key.
+     * @param inclusive true to include the depositor with AFM equal to the key.
+     * @return {count, sum of savings}.
+     */
+    private double[] totalsBelow(int key, boolean inclusive) {
+        double count = 0;
+        double sum = 0.0;
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int child = inclusive ? childIndex(inner, key) : lowerBound(inner.keys, inner.count - 1, key);
+            for (int i = 0; i < child; i++) {
+                count += inner.children[i].size;
+                sum += inner.children[i].sumSavings;
+            }
+            node = inner.children[child];
+        }
+        Leaf leaf = (Leaf) node;
+        int end = inclusive && key == Integer.MAX_VALUE ? leaf.count
+                : lowerBound(leaf.keys, leaf.count, inclusive ? key + 1 : key);
+        for (int i = 0; i < end; i++) {
+            sum += leaf.items[i].getSavings();
+        }
+        return new double[] {count + end, sum};
+    }
+
+    // Print top k large depositors, most suspicious first, in O(k + log n)
+    @Override
+    public void printTopLargeDepositors(int k) {
+        PrintWriter out = RandomizedBST.bufferedStdout();
+        Iterator<LargeDepositor> top = Spliterators.iterator(suspicionIndex.spliterator(true));
+        for (int i = 0; i < k && top.hasNext(); i++) {
+            out.println(top.next());
+        }
+        out.flush();
+    }
+
+    // Print all depositors by AFM (sorted), leaf by leaf
+    @Override
+    public void printByAFM() {
+        PrintWriter out = RandomizedBST.bufferedStdout();
+        forEachByAFM(out::println);
+        out.flush();
+    }
+
+    /**
+     * Passes every depositor to the action in ascending AFM order.
+     *
+     * @param action The action to perform on each depositor.
+     */
+    public void forEachByAFM(Consumer<LargeDepositor> action) {
+        for (Leaf leaf = leafFor(Integer.MIN_VALUE); leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.count; i++) {
+                action.accept(leaf.items[i]);
+            }
+        }
+    }
+
+    /**
+     * Streams the depositors with lowAFM <= AFM <= highAFM in ascending AFM order: one descent
+     * to the first leaf, then along the leaf links. The tree must not be changed while the
+     * iterator is in use.
+     *
+     * @param lowAFM The smallest AFM of the range (inclusive).
+     * @param highAFM The largest AFM of the range (inclusive).
+     * @return The iterator over the range.
+     */
+    public Iterator<LargeDepositor> rangeByAFM(int lowAFM, int highAFM) {
+        Leaf first = leafFor(lowAFM);
+        int start = lowerBound(first.keys, first.count, lowAFM);
+        return new Iterator<LargeDepositor>() {
+            private Leaf leaf = first;
+            private int i = start;
+
+            @Override
+            public boolean hasNext() {
+                while (leaf != null && i == leaf.count) {
+                    leaf = leaf.next;
+                    i = 0;
+                }
+                return leaf != null && leaf.keys[i] <= highAFM;
+            }
+
+            @Override
+            public LargeDepositor next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return leaf.items[i++];
+            }
+        };
+    }
+}
@@ -0,0 +1,424 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Compact implementation of TaxEvasionInterface that stores the depositors column by column.
+ *
+ * Every depositor is a slot: an index into primitive arrays for the AFM, the savings, the
+ * taxed income and the two name codes. The three randomized BSTs (by AFM, by (last name, AFM)
+ * and by suspicion) link slots with int indices instead of references, so a depositor costs
+ * about 70 bytes of arrays instead of a TreeNode, a LargeDepositor and two Strings per tree.
+ * Names are dictionary encoded: each distinct name is stored once, in NameDictionary.SHARED,
+ * and a depositor keeps only the codes that LargeDepositor already carries.
+ *
+ * LargeDepositor objects are created on demand by the searches and the print methods; they
+ * are copies, and changing them does not change the store.
+ */
+public class ColumnarRandomizedBST implements TaxEvasionInterface {
+
+    private static final int NIL = -1;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // The three trees, used as the first index of the link arrays
+    private static final int BY_AFM = 0;
+    private static final int BY_LAST_NAME = 1;
+    private static final int BY_SUSPICION = 2;
+    private static final int TREES = 3;
+
+    // Columns, one entry per slot
+    private int[] afm;
+    private double[] savings;
+    private double[] taxedIncome;
+    private int[] firstName; // Codes in NameDictionary.SHARED
+    private int[] lastName;
+
+    // Tree links, one row per tree; a free slot is chained through left[BY_AFM]
+    private final int[][] left = new int[TREES][];
+    private final int[][] right = new int[TREES][];
+    private final int[][] N = new int[TREES][];
+    private double[] sumSavings; // Savings of the subtree in the AFM tree, for the mean
+
+    private final int[] root = {NIL, NIL, NIL};
+    private int used = 0; // Slots handed out so far, live or free
+    private int freeSlot = NIL;
+
+    private final RandomGenerator random; // null for ThreadLocalRandom
+
+    // Results of split()
+    private int splitLess;
+    private int splitGreater;
+
+    public ColumnarRandomizedBST() {
+        this((RandomGenerator) null);
+    }
+
+    // Seeded random choices, for reproducible tree shapes
+    public ColumnarRandomizedBST(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    public ColumnarRandomizedBST(RandomGenerator random) {
+        this.random = random;
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    // Resize every column and link array to the given capacity
+    private void allocate(int capacity) {
+        afm = afm == null ? new int[capacity] : Arrays.copyOf(afm, capacity);
+        savings = savings == null ? new double[capacity] : Arrays.copyOf(savings, capacity);
+        taxedIncome = taxedIncome == null ? new double[capacity] : Arrays.copyOf(taxedIncome, capacity);
+        firstName = firstName == null ? new int[capacity] : Arrays.copyOf(firstName, capacity);
+        lastName = lastName == null ? new int[capacity] : Arrays.copyOf(lastName, capacity);
+        sumSavings = sumSavings == null ? new double[capacity] : Arrays.copyOf(sumSavings, capacity);
+        for (int t = 0; t < TREES; t++) {
+            left[t] = left[t] == null ? new int[capacity] : Arrays.copyOf(left[t], capacity);
+            right[t] = right[t] == null ? new int[capacity] : Arrays.copyOf(right[t], capacity);
+            N[t] = N[t] == null ? new int[capacity] : Arrays.copyOf(N[t], capacity);
+        }
+    }
+
+    // A slot for a new depositor, reusing a removed one if there is any
+    private int newSlot() {
+        if (freeSlot != NIL) {
+            int slot = freeSlot;
+            freeSlot = left[BY_AFM][slot];
+            return slot;
+        }
+        if (used == afm.length) {
+            allocate(2 * afm.length);
+        }
+        return used++;
+    }
+
+    private void freeSlot(int slot) {
+        left[BY_AFM][slot] = freeSlot;
+        freeSlot = slot;
+    }
+
+    private int randomInt(int bound) {
+        return random == null ? ThreadLocalRandom.current().nextInt(bound) : random.nextInt(bound);
+    }
+
+    private double suspicionScore(int slot) {
+        return taxedIncome[slot] < 8000 ? Double.MAX_VALUE : savings[slot] - taxedIncome[slot];
+    }
+
+    // Order of two slots in tree t, the same orders as RandomizedBST and DepositorIndex
+    private int compare(int t, int a, int b) {
+        if (t == BY_LAST_NAME && lastName[a] != lastName[b]) {
+            return Integer.compare(lastName[a], lastName[b]);
+        }
+        if (t == BY_SUSPICION) {
+            int c = Double.compare(suspicionScore(a), suspicionScore(b));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(afm[a], afm[b]);
+    }
+
+    private int size(int t, int node) {
+        return node == NIL ? 0 : N[t][node];
+    }
+
+    private double sumSavings(int node) {
+        return node == NIL ? 0.0 : sumSavings[node];
+    }
+
+    // Recompute the size (and for the AFM tree the savings total) of a node from its children
+    private void update(int t, int node) {
+        N[t][node] = 1 + size(t, left[t][node]) + size(t, right[t][node]);
+        if (t == BY_AFM) {
+            sumSavings[node] = savings[node] + sumSavings(left[BY_AFM][node]) + sumSavings(right[BY_AFM][node]);
+        }
+    }
+
+    /**
+     * Randomized insert of a slot into the subtree of tree t: the slot becomes the root of a
+     * subtree of size n with probability 1/(n+1), as in RandomizedBST.
+     *
+     * @return The new root of the subtree.
+     */
+    private int insert(int t, int node, int slot) {
+        if (node == NIL) {
+            left[t][slot] = NIL;
+            right[t][slot] = NIL;
+            update(t, slot);
+            return slot;
+        }
+        if (randomInt(N[t][node] + 1) == 0) {
+            split(t, node, slot);
+            left[t][slot] = splitLess;
+            right[t][slot] = splitGreater;
+            update(t, slot);
+            return slot;
+        }
+        if (compare(t, slot, node) < 0) {
+            left[t][node] = insert(t, left[t][node], slot);
+        } else {
+            right[t][node] = insert(t, right[t][node], slot);
+        }
+        update(t, node);
+        return node;
+    }
+
+    // Split the subtree of tree t into the slots before and after 'slot', into splitLess and splitGreater
+    private void split(int t, int node, int slot) {
+        if (node == NIL) {
+            splitLess = NIL;
+            splitGreater = NIL;
+            return;
+        }
+        if (compare(t, slot, node) < 0) {
+            split(t, left[t][node], slot);
+            left[t][node] = splitGreater;
+            update(t, node);
+            splitGreater = node;
+        } else {
+            split(t, right[t][node], slot);
+            right[t][node] = splitLess;
+            update(t, node);
+            splitLess = node;
+        }
+    }
+
+    // Remove a slot from the subtree of tree t, returns the new root of the subtree
+    private int remove(int t, int node, int slot) {
+        if (node == slot) {
+            return join(t, left[t][node], right[t][node]);
+        }
+        if (compare(t, slot, node) < 0) {
+            left[t][node] = remove(t, left[t][node], slot);
+        } else {
+            right[t][node] = remove(t, right[t][node], slot);
+        }
+        update(t, node);
+        return node;
+    }
+
+    // Randomized join of two subtrees of tree t, every slot of a before every slot of b
+    private int join(int t, int a, int b) {
+        if (a == NIL) {
+            return b;
+        }
+        if (b == NIL) {
+            return a;
+        }
+        if (randomInt(N[t][a] + N[t][b]) < N[t][a]) {
+            right[t][a] = join(t, right[t][a], b);
+            update(t, a);
+            return a;
+        }
+        left[t][b] = join(t, a, left[t][b]);
+        update(t, b);
+        return b;
+    }
+
+    // Slot of the depositor with the given AFM, or NIL
+    private int find(int AFM) {
+        int node = root[BY_AFM];
+        while (node != NIL && afm[node] != AFM) {
+            node = AFM < afm[node] ? left[BY_AFM][node] : right[BY_AFM][node];
+        }
+        return node;
+    }
+
+    // A new LargeDepositor with the values of a slot
+    private LargeDepositor depositor(int slot) {
+        return new LargeDepositor(afm[slot], firstName[slot], lastName[slot], savings[slot], taxedIncome[slot]);
+    }
+
+    // Insert new depositor, its values are copied into the columns
+    @Override
+    public void insert(LargeDepositor item) {
+        if (find(item.key()) != NIL) {
+            System.out.println("Depositor with AFM " + item.key() + " already exists.");
+            return;
+        }
+
+        int slot = newSlot();
+        afm[slot] = item.key();
+        savings[slot] = item.getSavings();
+        taxedIncome[slot] = item.getTaxedIncome();
+        firstName[slot] = item.getFirstNameCode();
+        lastName[slot] = item.getLastNameCode();
+        for (int t = 0; t < TREES; t++) {
+            root[t] = insert(t, root[t], slot);
+        }
+    }
+
+    // Load data from file, see RandomizedBST.load
+    @Override
+    public void load(String filename) {
+        DepositorFileParser.Result parsed;
+        try {
+            parsed = new DepositorFileParser().parse(Paths.get(filename));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for (DepositorFileParser.ParseError error : parsed.errors) {
+            System.out.println("Skipped malformed line in " + filename + ": " + error);
+        }
+        if (used + parsed.depositors.size() > afm.length) {
+            allocate(used + parsed.depositors.size());
+        }
+        for (LargeDepositor item : parsed.depositors) {
+            insert(item);
+        }
+    }
+
+    @Override
+    public boolean updateSavings(int AFM, double savings) {
+        int slot = find(AFM);
+        if (slot == NIL) {
+            return false;
+        }
+
+        // The score changes, so the slot moves in the suspicion tree
+        root[BY_SUSPICION] = remove(BY_SUSPICION, root[BY_SUSPICION], slot);
+        this.savings[slot] = savings;
+        root[BY_SUSPICION] = insert(BY_SUSPICION, root[BY_SUSPICION], slot);
+
+        // Fix the savings totals on the path from the root to the slot
+        int node = root[BY_AFM];
+        double delta = savings - (sumSavings[slot] - sumSavings(left[BY_AFM][slot]) - sumSavings(right[BY_AFM][slot]));
+        while (node != NIL) {
+            sumSavings[node] += delta;
+            if (node == slot) {
+                break;
+            }
+            node = AFM < afm[node] ? left[BY_AFM][node] : right[BY_AFM][node];
+        }
+        return true;
+    }
+
+    // Search depositor by AFM, the result is a copy
+    @Override
+    public LargeDepositor searchByAFM(int AFM) {
+        int slot = find(AFM);
+        if (slot == NIL) {
+            System.out.println("Depositor with AFM " + AFM + " not found.");
+            return null;
+        }
+        return depositor(slot);
+    }
+
+    @Override
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name) {
+        return searchByLastName(last_name, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Last name search, see RandomizedBST.searchByLastName(String, int). A name that was
+     * never stored has no code and is rejected without walking the tree.
+     *
+     * @param last_name The last name of the depositors to search for.
+     * @param limit The maximum number of depositors to return.
+     * @return The queue of matching depositors ordered by AFM, or null if none was found.
+     */
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name, int limit) {
+        int code = NameDictionary.SHARED.code(last_name);
+        if (code == NIL) {
+            return null;
+        }
+        StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueArrayImpl<>();
+        collect(root[BY_LAST_NAME], code, limit, result);
+        return result.size() > 0 ? result : null;
+    }
+
+    // In-order walk over the slots with the given last name code, until the queue holds 'limit' items
+    private void collect(int node, int code, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        while (node != NIL && result.size() < limit) {
+            if (lastName[node] < code) {
+                node = right[BY_LAST_NAME][node];
+            } else if (lastName[node] > code) {
+                node = left[BY_LAST_NAME][node];
+            } else {
+                collect(left[BY_LAST_NAME][node], code, limit, result);
+                if (result.size() < limit) {
+                    result.addLast(depositor(node));
+                }
+                node = right[BY_LAST_NAME][node];
+            }
+        }
+    }
+
+    @Override
+    public void remove(int AFM) {
+        int slot = find(AFM);
+        if (slot == NIL) {
+            System.out.println("Depositor with AFM " + AFM + " not found.");
+            return;
+        }
+        for (int t = 0; t < TREES; t++) {
+            root[t] = remove(t, root[t], slot);
+        }
+        freeSlot(slot);
+    }
+
+    // O(1), from the savings total kept at the root
+    @Override
+    public double getMeanSavings() {
+        if (root[BY_AFM] == NIL) {
+            return 0.0;
+        }
+        return sumSavings[root[BY_AFM]] / N[BY_AFM][root[BY_AFM]];
+    }
+
+    // Number of depositors in the store
+    public int size() {
+        return size(BY_AFM, root[BY_AFM]);
+    }
+
+    // Print top k large depositors, most suspicious first, in O(k + log n)
+    @Override
+    public void printTopLargeDepositors(int k) {
+        print(BY_SUSPICION, true, k);
+    }
+
+    // Print all depositors by AFM (sorted)
+    @Override
+    public void printByAFM() {
+        print(BY_AFM, false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Prints the first 'limit' depositors of a tree in order, with an explicit stack instead
+     * of recursion and through one buffered writer (see RandomizedBST.bufferedStdout).
+     *
+     * @param t The tree, e.g. BY_AFM.
+     * @param descending true to walk from the largest slot down.
+     * @param limit The maximum number of depositors to print.
+     */
+    private void print(int t, boolean descending, int limit) {
+        int[] near = descending ? right[t] : left[t]; // Links toward the first slot to print
+        int[] far = descending ? left[t] : right[t];
+        PrintWriter out = RandomizedBST.bufferedStdout();
+        int[] stack = new int[32];
+        int depth = 0;
+        int node = root[t];
+        int printed = 0;
+
+        while ((node != NIL || depth > 0) && printed < limit) {
+            while (node != NIL) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = near[node];
+            }
+            node = stack[--depth];
+            out.println(depositor(node));
+            printed++;
+            node = far[node];
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.random.RandomGenerator;
+
+/**
+ * Thread-safe implementation of TaxEvasionInterface.
+ *
+ * The depositors live in three immutable treaps (by AFM, by (lastName, AFM) and by suspicion)
+ * that are published together through one AtomicReference. Readers (searches, the mean,
+ * the print methods) read the current version once and never block, even while a writer
+ * is building the next version. Writers are serialized by a lock and publish a new version
+ * with path copying, so only O(log n) nodes are allocated per update; load() publishes the
+ * whole file as a single version.
+ *
+ * The LargeDepositor objects are shared between versions and must be treated as read-only:
+ * updateSavings publishes a new object instead of changing the old one.
+ */
+class ConcurrentRandomizedBST implements TaxEvasionInterface {
+
+    // One consistent version of the three treaps
+    private static final class Version {
+        final PersistentTreap.Node byAFM;
+        final PersistentTreap.Node byLastName;
+        final PersistentTreap.Node bySuspicion;
+
+        Version(PersistentTreap.Node byAFM, PersistentTreap.Node byLastName, PersistentTreap.Node bySuspicion) {
+            this.byAFM = byAFM;
+            this.byLastName = byLastName;
+            this.bySuspicion = bySuspicion;
+        }
+    }
+
+    private static final Comparator<LargeDepositor> BY_AFM = Comparator.comparingInt(LargeDepositor::key);
+
+    private final AtomicReference<Version> current = new AtomicReference<>(new Version(null, null, null));
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final RandomGenerator random; // Treap priorities, null for ThreadLocalRandom
+
+    public ConcurrentRandomizedBST() {
+        this.random = null;
+    }
+
+    // Seeded priorities for reproducible tree shapes; only used under the write lock
+    public ConcurrentRandomizedBST(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    // Random treap priority, the caller holds the write lock
+    private int nextPriority() {
+        return random == null ? ThreadLocalRandom.current().nextInt() : random.nextInt();
+    }
+
+    @Override
+    public void insert(LargeDepositor item) {
+        writeLock.lock();
+        try {
+            Version version = current.get();
+            Version next = insert(version, item);
+            if (next == version) {
+                System.out.println("Depositor with AFM " + item.key() + " already exists.");
+                return;
+            }
+            current.set(next);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Builds the version with one more depositor; the caller holds the write lock.
+     *
+     * @return The new version, or the same version if the AFM already exists.
+     */
+    private Version insert(Version version, LargeDepositor item) {
+        if (PersistentTreap.findByAFM(version.byAFM, item.key()) != null) {
+            return version;
+        }
+        // Private copy, so a caller that keeps changing its object cannot affect readers
+        LargeDepositor copy = item.copy();
+        return new Version(
+                PersistentTreap.insert(version.byAFM, copy, nextPriority(), BY_AFM),
+                PersistentTreap.insert(version.byLastName, copy, nextPriority(), DepositorIndex.BY_LAST_NAME),
+                PersistentTreap.insert(version.bySuspicion, copy, nextPriority(), DepositorIndex.BY_SUSPICION));
+    }
+
+    // Load data from file, all its depositors become visible at once
+    @Override
+    public void load(String filename) {
+        DepositorFileParser.Result parsed;
+        try {
+            parsed = new DepositorFileParser().parse(Paths.get(filename));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for (DepositorFileParser.ParseError error : parsed.errors) {
+            System.out.println("Skipped malformed line in " + filename + ": " + error);
+        }
+        insertAll(parsed.depositors);
+    }
+
+    /**
+     * Inserts a batch of depositors under one acquisition of the write lock and publishes
+     * them as a single new version.
+     *
+     * @param depositors The depositors to insert.
+     */
+    public void insertAll(List<LargeDepositor> depositors) {
+        writeLock.lock();
+        try {
+            Version version = current.get();
+            for (LargeDepositor item : depositors) {
+                Version next = insert(version, item);
+                if (next == version) {
+                    System.out.println("Depositor with AFM " + item.key() + " already exists.");
+                }
+                version = next;
+            }
+            current.set(version);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean updateSavings(int AFM, double savings) {
+        writeLock.lock();
+        try {
+            Version version = current.get();
+            LargeDepositor old = PersistentTreap.findByAFM(version.byAFM, AFM);
+            if (old == null) {
+                return false;
+            }
+
+            LargeDepositor updated = new LargeDepositor(AFM, old.firstNameCode, old.lastNameCode, savings, old.taxedIncome);
+            PersistentTreap.Node bySuspicion = PersistentTreap.remove(version.bySuspicion, old, DepositorIndex.BY_SUSPICION);
+            current.set(new Version(
+                    PersistentTreap.replace(version.byAFM, updated, BY_AFM),
+                    PersistentTreap.replace(version.byLastName, updated, DepositorIndex.BY_LAST_NAME),
+                    PersistentTreap.insert(bySuspicion, updated, nextPriority(), DepositorIndex.BY_SUSPICION)));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Lock-free lookup on the current version
+    @Override
+    public LargeDepositor searchByAFM(int AFM) {
+        LargeDepositor item = PersistentTreap.findByAFM(current.get().byAFM, AFM);
+        if (item == null) {
+            System.out.println("Depositor with AFM " + AFM + " not found.");
+        }
+        return item;
+    }
+
+    @Override
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name) {
+        return searchByLastName(last_name, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Lock-free last name search, see RandomizedBST.searchByLastName(String, int).
+     *
+     * @param last_name The last name of the depositors to search for.
+     * @param limit The maximum number of depositors to return.
+     * @return The queue of matching depositors ordered by AFM, or null if none was found.
+     */
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name, int limit) {
+        int code = NameDictionary.SHARED.code(last_name);
+        if (code == NameDictionary.NIL) {
+            return null; // No depositor ever had this name, and the probe must not intern it
+        }
+        StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueArrayImpl<>();
+        LargeDepositor from = new LargeDepositor(Integer.MIN_VALUE, NameDictionary.NIL, code, 0, 0);
+        PersistentTreap.collect(current.get().byLastName, from, DepositorIndex.BY_LAST_NAME,
+                DepositorIndex.LAST_NAME, limit, result);
+        return result.size() > 0 ? result : null;
+    }
+
+    @Override
+    public void remove(int AFM) {
+        writeLock.lock();
+        try {
+            Version version = current.get();
+            LargeDepositor old = PersistentTreap.findByAFM(version.byAFM, AFM);
+            if (old == null) {
+                System.out.println("Depositor with AFM " + AFM + " not found.");
+                return;
+            }
+
+            current.set(new Version(
+                    PersistentTreap.remove(version.byAFM, old, BY_AFM),
+                    PersistentTreap.remove(version.byLastName, old, DepositorIndex.BY_LAST_NAME),
+                    PersistentTreap.remove(version.bySuspicion, old, DepositorIndex.BY_SUSPICION)));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // O(1) and lock-free, from the totals kept at the root of the current version
+    @Override
+    public double getMeanSavings() {
+        PersistentTreap.Node root = current.get().byAFM;
+        if (root == null) {
+            return 0.0;
+        }
+        return root.sumSavings / root.N;
+    }
+
+    // Number of depositors in the current version
+    public int size() {
+        return PersistentTreap.size(current.get().byAFM);
+    }
+
+    @Override
+    public void printTopLargeDepositors(int k) {
+        StringDoubleEndedQueue<LargeDepositor> top = new StringDoubleEndedQueueArrayImpl<>();
+        PersistentTreap.collectDescending(current.get().bySuspicion, k, top);
+        PrintWriter out = RandomizedBST.bufferedStdout();
+        while (!top.isEmpty()) {
+            out.println(top.removeFirst());
+        }
+        out.flush();
+    }
+
+    // Iterative walk over one version, through one buffered writer
+    @Override
+    public void printByAFM() {
+        PrintWriter out = RandomizedBST.bufferedStdout();
+        PersistentTreap.forEach(current.get().byAFM, out::println);
+        out.flush();
+    }
+
+    /**
+     * Checks the invariants of the current version: each treap is ordered, heap-ordered and
+     * has correct sizes, and the three treaps hold the same depositors.
+     * Safe to call while writers are running, it only looks at one version.
+     *
+     * @throws IllegalStateException If an invariant does not hold.
+     */
+    void checkInvariants() {
+        Version version = current.get();
+        PersistentTreap.check(version.byAFM, BY_AFM);
+        PersistentTreap.check(version.byLastName, DepositorIndex.BY_LAST_NAME);
+        PersistentTreap.check(version.bySuspicion, DepositorIndex.BY_SUSPICION);
+
+        int n = PersistentTreap.size(version.byAFM);
+        if (PersistentTreap.size(version.byLastName) != n || PersistentTreap.size(version.bySuspicion) != n) {
+            throw new IllegalStateException("Treap sizes differ: " + n + ", "
+                    + PersistentTreap.size(version.byLastName) + ", " + PersistentTreap.size(version.bySuspicion));
+        }
+        checkContained(version.byLastName, version.byAFM);
+        checkContained(version.bySuspicion, version.byAFM);
+    }
+
+    // Every depositor of the index must be the very object stored in the AFM treap
+    private void checkContained(PersistentTreap.Node node, PersistentTreap.Node byAFM) {
+        if (node == null) {
+            return;
+        }
+        if (PersistentTreap.findByAFM(byAFM, node.item.key()) != node.item) {
+            throw new IllegalStateException("Index entry not in the AFM treap: " + node.item);
+        }
+        checkContained(node.left, byAFM);
+        checkContained(node.right, byAFM);
+    }
+}
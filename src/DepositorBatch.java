@@ -0,0 +1,271 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a script of commands against an engine without the interactive menu: one command per
+ * line, read from a file or from stdin, executed in a tight loop.
+ *
+ * Commands (fields separated by whitespace; blank lines and lines starting with # are skipped):
+ *   i AFM firstName lastName savings taxedIncome   insert
+ *   l filename                                     load data from file
+ *   u AFM savings                                  update savings
+ *   s AFM                                          search by AFM
+ *   n lastName                                     search by last name
+ *   r AFM                                          remove
+ *   m                                              mean savings
+ *   t k                                            print the top k depositors
+ *   p                                              print all depositors by AFM
+ *
+ * The output has the same messages as the menu, without the prompts. It all goes through one
+ * buffered stream, which is flushed at the end or, with --group N, after every N commands.
+ * A malformed command is reported and skipped; an exception thrown by the engine ends the run.
+ * At the end a timing summary per command is written to stderr, so that it does not mix with
+ * the output.
+ *
+ * Usage: java DepositorBatch [--engine bst] [--seed 1] [--group 0] [script]
+ *        (no script or "-" reads stdin)
+ */
+public class DepositorBatch {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String COMMANDS = "ilusnrmtp";
+    private static final Pattern FIELD_SEPARATOR = Pattern.compile("\\s+");
+
+    // One parsed command: its letter and its arguments
+    private static final class Command {
+        final char letter;
+        final int op; // Position of the letter in COMMANDS
+        final int afm; // AFM, or k for 't'
+        final double savings;
+        final String text; // File name or last name
+        final LargeDepositor depositor; // For 'i'
+
+        Command(char letter, int op, int afm, double savings, String text, LargeDepositor depositor) {
+            this.letter = letter;
+            this.op = op;
+            this.afm = afm;
+            this.savings = savings;
+            this.text = text;
+            this.depositor = depositor;
+        }
+    }
+
+    private final TaxEvasionInterface engine;
+    private final int group; // Flush after this many commands, 0 for only at the end
+    private final long[] counts = new long[COMMANDS.length()];
+    private final long[] nanos = new long[COMMANDS.length()];
+    private long malformed = 0;
+
+    public DepositorBatch(TaxEvasionInterface engine, int group) {
+        this.engine = engine;
+        this.group = group;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String engineName = "bst";
+        long seed = 1;
+        int group = 0;
+        String script = "-";
+
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            if (i + 1 >= args.length) {
+                System.out.println("Missing value for " + args[i]);
+                return;
+            }
+            switch (args[i]) {
+                case "--engine":
+                    engineName = args[i + 1];
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--group":
+                    group = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+        if (i < args.length) {
+            script = args[i];
+        }
+
+        DepositorBatch batch = new DepositorBatch(DepositorBenchmark.newEngine(engineName, seed), group);
+        try (BufferedReader in = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), BUFFER_SIZE)
+                : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8)) {
+            batch.run(in);
+        }
+    }
+
+    /**
+     * Executes every command of the input, with System.out replaced by one buffered stream
+     * for the duration of the run, then writes the timing summary to stderr.
+     *
+     * @param in The commands, one per line.
+     * @throws IOException If the input cannot be read.
+     */
+    public void run(BufferedReader in) throws IOException {
+        PrintStream stdout = System.out;
+        PrintStream out = new PrintStream(new BufferedOutputStream(stdout, BUFFER_SIZE), false);
+        System.setOut(out);
+
+        long start = System.nanoTime();
+        long lineNumber = 0;
+        long executed = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                String command = line.trim();
+                if (command.isEmpty() || command.charAt(0) == '#') {
+                    continue;
+                }
+                Command parsed;
+                try {
+                    parsed = parse(command);
+                } catch (IllegalArgumentException e) {
+                    // Includes NumberFormatException; failures of the engine itself are not caught
+                    malformed++;
+                    out.println("Skipped malformed command at line " + lineNumber + ": " + line);
+                    continue;
+                }
+                execute(parsed, out);
+                if (group > 0 && ++executed % group == 0) {
+                    out.flush();
+                }
+            }
+        } finally {
+            out.flush();
+            System.setOut(stdout);
+        }
+        printSummary(System.nanoTime() - start);
+    }
+
+    /**
+     * Parses one command without touching the engine.
+     *
+     * @param command The trimmed line.
+     * @return The command and its arguments.
+     * @throws IllegalArgumentException If the command is unknown or its fields are missing or
+     *                                  not numbers (NumberFormatException).
+     */
+    private static Command parse(String command) {
+        int op = command.length() == 1 || Character.isWhitespace(command.charAt(1))
+                ? COMMANDS.indexOf(command.charAt(0)) : -1;
+        if (op < 0) {
+            throw new IllegalArgumentException("Unknown command");
+        }
+        char letter = command.charAt(0);
+        String rest = command.substring(1).trim();
+        String[] fields = FIELD_SEPARATOR.split(rest);
+
+        switch (letter) {
+            case 'i':
+                requireFields(fields, 5);
+                return new Command(letter, op, 0, 0, null, new LargeDepositor(Integer.parseInt(fields[0]),
+                        fields[1], fields[2], Double.parseDouble(fields[3]), Double.parseDouble(fields[4])));
+            case 'l':
+            case 'n':
+                requireText(rest);
+                return new Command(letter, op, 0, 0, rest, null);
+            case 'u':
+                requireFields(fields, 2);
+                return new Command(letter, op, Integer.parseInt(fields[0]), Double.parseDouble(fields[1]), null, null);
+            case 's':
+            case 'r':
+            case 't':
+                requireFields(fields, 1);
+                return new Command(letter, op, Integer.parseInt(fields[0]), 0, null, null);
+            default: // 'm' and 'p'
+                return new Command(letter, op, 0, 0, null, null);
+        }
+    }
+
+    // Execute one parsed command, timing it under its letter
+    private void execute(Command command, PrintStream out) {
+        long start = System.nanoTime();
+        switch (command.letter) {
+            case 'i':
+                engine.insert(command.depositor);
+                break;
+            case 'l':
+                engine.load(command.text);
+                break;
+            case 'u':
+                if (!engine.updateSavings(command.afm, command.savings)) {
+                    out.println("Depositor with AFM " + command.afm + " not found");
+                }
+                break;
+            case 's': {
+                // The engine reports a missing AFM itself
+                LargeDepositor result = engine.searchByAFM(command.afm);
+                if (result != null) {
+                    out.println(result);
+                }
+                break;
+            }
+            case 'n': {
+                StringDoubleEndedQueue<LargeDepositor> results = engine.searchByLastName(command.text);
+                if (results != null) {
+                    out.println("Depositors with last name " + command.text + ":");
+                    results.printQueue(out);
+                } else {
+                    out.println("No depositors with last name " + command.text);
+                }
+                break;
+            }
+            case 'r':
+                engine.remove(command.afm);
+                break;
+            case 'm':
+                out.println("Mean Savings: " + engine.getMeanSavings());
+                break;
+            case 't':
+                engine.printTopLargeDepositors(command.afm);
+                break;
+            default: // 'p'
+                engine.printByAFM();
+                break;
+        }
+        counts[command.op]++;
+        nanos[command.op] += System.nanoTime() - start;
+    }
+
+    private static void requireFields(String[] fields, int count) {
+        if (fields.length != count || fields[0].isEmpty()) {
+            throw new IllegalArgumentException("Expected " + count + " fields");
+        }
+    }
+
+    // File names and last names are the rest of the line and may contain spaces
+    private static void requireText(String rest) {
+        if (rest.isEmpty()) {
+            throw new IllegalArgumentException("Expected a name");
+        }
+    }
+
+    // Commands run, total and mean time per command letter, and the overall throughput
+    private void printSummary(long elapsedNanos) {
+        long total = 0;
+        System.err.printf("%-8s %12s %12s %12s%n", "command", "count", "total ms", "mean us");
+        for (int op = 0; op < COMMANDS.length(); op++) {
+            if (counts[op] > 0) {
+                System.err.printf("%-8s %12d %12.1f %12.2f%n", COMMANDS.charAt(op), counts[op], nanos[op] / 1e6,
+                        nanos[op] / 1e3 / counts[op]);
+                total += counts[op];
+            }
+        }
+        System.err.printf("%d commands (%d malformed skipped) in %.1f ms, %.0f commands/s%n", total, malformed,
+                elapsedNanos / 1e6, total / (elapsedNanos / 1e9));
+    }
+}
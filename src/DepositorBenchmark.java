@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Smoke runner for the TaxEvasionInterface engines: a quick check that every operation works
+ * and a rough idea of its cost, without a build. The figures to rely on come from the JMH
+ * benchmarks in benchmarks/ (bench.DepositorJmh, run with the gc profiler by bench.JmhRunner),
+ * which cover every engine for 10^4 to 10^7 depositors in a forked, warmed-up JVM.
+ *
+ * For every engine and size it generates synthetic depositors (see DepositorGenerator) and
+ * measures insert, load, searchByAFM, searchByLastName, getMeanSavings,
+ * printTopLargeDepositors and remove. Every call is timed on its own, and each operation
+ * reports its throughput, its latency percentiles and the bytes allocated per call by the
+ * benchmark thread (the same figure as gc.alloc.rate.norm in a JMH gc profile; for load the
+ * parser's worker threads are not included).
+ * A warm-up pass on a small size runs first so that the measured code is compiled.
+ *
+ * Usage: java DepositorBenchmark [--engine bst,bplus,concurrent,columnar,sharded] [--sizes 10000,100000]
+ *                                [--ops 100000] [--seed 1]
+ */
+public class DepositorBenchmark {
+
+    private static final int LOAD_REPEATS = 3;
+    private static final int TOP_K = 100;
+
+    // Result of one operation at one size
+    private static final class Measurement {
+        final String operation;
+        final int calls;
+        final long totalNanos;
+        final long[] latencies; // Per call, in nanoseconds
+        final long allocatedBytes;
+
+        Measurement(String operation, long totalNanos, long[] latencies, long allocatedBytes) {
+            this.operation = operation;
+            this.calls = latencies.length;
+            this.totalNanos = totalNanos;
+            this.latencies = latencies;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    // One operation to measure, called once per index
+    private interface Operation {
+        void run(int i);
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final String engineName;
+    private final long seed;
+    private final int ops;
+
+    private DepositorBenchmark(String engineName, long seed, int ops) {
+        this.engineName = engineName;
+        this.seed = seed;
+        this.ops = ops;
+    }
+
+    /**
+     * Creates an empty engine by name.
+     *
+     * @param name "bst" for RandomizedBST, "bplus" for BPlusTree, "concurrent" for
+     *             ConcurrentRandomizedBST, "columnar" for ColumnarRandomizedBST or "sharded"
+     *             for ShardedRandomizedBST.
+     * @param seed The seed of the engine's random choices, for reproducible shapes.
+     * @return The new engine.
+     * @throws IllegalArgumentException If the name is unknown.
+     */
+    static TaxEvasionInterface newEngine(String name, long seed) {
+        switch (name) {
+            case "bst":
+                return new RandomizedBST(seed);
+            case "concurrent":
+                return new ConcurrentRandomizedBST(seed);
+            case "columnar":
+                return new ColumnarRandomizedBST(seed);
+            case "sharded":
+                return new ShardedRandomizedBST(Runtime.getRuntime().availableProcessors(), seed);
+            case "bplus":
+                return new BPlusTree(seed);
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String[] engines = {"bst", "bplus"};
+        int[] sizes = {10000, 100000}; // Larger sizes belong to the JMH benchmarks
+        int ops = 100000;
+        long seed = 1;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--engine":
+                    engines = args[i + 1].split(",");
+                    break;
+                case "--sizes":
+                    sizes = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--ops":
+                    ops = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        Path dir = Files.createTempDirectory("depositor-benchmark");
+        try {
+            for (String engine : engines) {
+                DepositorBenchmark benchmark = new DepositorBenchmark(engine, seed, ops);
+                benchmark.run(10000, dir, false); // Warm-up
+                for (int size : sizes) {
+                    benchmark.run(size, dir, true);
+                }
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    // Measure every operation at one size and print the results
+    private void run(int size, Path dir, boolean report) throws IOException {
+        List<LargeDepositor> depositors = DepositorGenerator.generate(size, seed);
+        Path file = dir.resolve("depositors-" + size + ".txt");
+        if (!Files.exists(file)) {
+            DepositorGenerator.write(file, size, seed);
+        }
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int calls = Math.min(ops, size);
+        int[] keys = new int[calls];
+        String[] names = new String[calls];
+        for (int i = 0; i < calls; i++) {
+            LargeDepositor depositor = depositors.get(random.nextInt(size));
+            keys[i] = depositor.key();
+            names[i] = depositor.getLastName();
+        }
+        int[] removals = distinctKeys(depositors, calls, random);
+
+        List<Measurement> results = new ArrayList<>();
+
+        TaxEvasionInterface inserted = newEngine(engineName, seed);
+        results.add(measure("insert", size, i -> inserted.insert(depositors.get(i))));
+
+        TaxEvasionInterface[] loaded = new TaxEvasionInterface[1];
+        results.add(measure("load", LOAD_REPEATS, i -> {
+            loaded[0] = newEngine(engineName, seed);
+            loaded[0].load(file.toString());
+        }));
+        TaxEvasionInterface engine = loaded[0];
+
+        results.add(measure("searchByAFM", calls, i -> engine.searchByAFM(keys[i])));
+        results.add(measure("searchByLastName", Math.max(1, calls / 100), i -> engine.searchByLastName(names[i])));
+        results.add(measure("getMeanSavings", calls, i -> engine.getMeanSavings()));
+
+        // The printed lines go nowhere, what is measured is the query and the formatting
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            results.add(measure("printTop" + TOP_K, Math.max(1, calls / 100), i -> engine.printTopLargeDepositors(TOP_K)));
+        } finally {
+            System.setOut(stdout);
+        }
+
+        results.add(measure("remove", removals.length, i -> engine.remove(removals[i])));
+
+        if (report) {
+            print(size, results);
+        }
+    }
+
+    // 'count' different AFMs of the depositors, in random order
+    private static int[] distinctKeys(List<LargeDepositor> depositors, int count, SplittableRandom random) {
+        int[] keys = new int[depositors.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = depositors.get(i).key();
+        }
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(keys.length - i);
+            int tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    // Time every call of the operation and count the bytes the benchmark thread allocated
+    private static Measurement measure(String name, int calls, Operation operation) {
+        long[] latencies = new long[calls];
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            long t0 = System.nanoTime();
+            operation.run(i);
+            latencies[i] = System.nanoTime() - t0;
+        }
+        long total = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+        return new Measurement(name, total, latencies, allocated);
+    }
+
+    private void print(int size, List<Measurement> results) {
+        System.out.println();
+        System.out.printf("engine=%s size=%d%n", engineName, size);
+        System.out.printf("%-18s %10s %14s %10s %10s %10s %10s %12s%n",
+                "operation", "calls", "ops/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "bytes/op");
+        for (Measurement m : results) {
+            long[] sorted = m.latencies.clone();
+            Arrays.sort(sorted);
+            System.out.printf("%-18s %10d %14.1f %10.2f %10.2f %10.2f %10.2f %12.1f%n",
+                    m.operation, m.calls, m.calls * 1e9 / m.totalNanos,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90),
+                    percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    (double) m.allocatedBytes / m.calls);
+        }
+    }
+
+    // Percentile of sorted nanosecond latencies, in microseconds
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+    }
+}
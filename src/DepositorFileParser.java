@@ -0,0 +1,395 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parser for depositor files, one depositor per line:
+ * AFM firstName lastName savings taxedIncome
+ *
+ * The file is memory-mapped and split at line boundaries into chunks that are parsed
+ * by a pool of worker threads. Each worker tokenizes the mapped bytes directly and parses
+ * the AFM and the decimal fields without building intermediate Strings. The two names are
+ * interned into NameDictionary.SHARED from the mapped bytes, so a name that was seen before
+ * costs a hash lookup and no allocation. A malformed line is reported with its line number
+ * and skipped, the rest of the file is still loaded. Tokens after the fifth are ignored.
+ */
+class DepositorFileParser {
+
+    // A line of the input that could not be parsed
+    static class ParseError {
+        final long lineNumber; // 1-based line number in the file
+        final String message;
+
+        ParseError(long lineNumber, String message) {
+            this.lineNumber = lineNumber;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "Line " + lineNumber + ": " + message;
+        }
+    }
+
+    // Outcome of parsing a whole file
+    static class Result {
+        final List<LargeDepositor> depositors; // In file order
+        final List<ParseError> errors; // In line order
+
+        Result(List<LargeDepositor> depositors, List<ParseError> errors) {
+            this.depositors = depositors;
+            this.errors = errors;
+        }
+    }
+
+    // The depositors, errors and line count of one chunk of the file
+    private static class Chunk {
+        final List<LargeDepositor> depositors = new ArrayList<>();
+        final List<ParseError> errors = new ArrayList<>(); // Line numbers relative to the chunk
+        long lines;
+    }
+
+    private static final int FIELDS = 5;
+    private static final int MIN_CHUNK_SIZE = 1 << 20; // 1 MB
+    private static final int MAX_CHUNK_SIZE = 1 << 28; // 256 MB, a chunk is mapped as one buffer
+
+    // Exact powers of ten: a long mantissa below 2^53 divided or multiplied by one of them
+    // is correctly rounded, so the fast path gives the same result as Double.parseDouble
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final int threads;
+
+    // Parser using one worker thread per available processor
+    DepositorFileParser() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    DepositorFileParser(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Parses the whole file.
+     *
+     * @param file The depositor file.
+     * @return The parsed depositors in file order and the malformed lines.
+     * @throws IOException If the file cannot be read.
+     */
+    Result parse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Long> bounds = chunkBounds(channel);
+            List<Chunk> chunks = new ArrayList<>();
+
+            if (bounds.size() == 2 || threads == 1) {
+                for (int i = 0; i + 1 < bounds.size(); i++) {
+                    chunks.add(parseChunk(channel, bounds.get(i), bounds.get(i + 1)));
+                }
+            } else {
+                ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads, bounds.size() - 1));
+                try {
+                    List<Future<Chunk>> pending = new ArrayList<>();
+                    for (int i = 0; i + 1 < bounds.size(); i++) {
+                        long start = bounds.get(i);
+                        long end = bounds.get(i + 1);
+                        pending.add(workers.submit(() -> parseChunk(channel, start, end)));
+                    }
+                    for (Future<Chunk> future : pending) {
+                        chunks.add(future.get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while parsing " + file, e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to parse " + file, e.getCause());
+                } finally {
+                    workers.shutdownNow();
+                }
+            }
+
+            return combine(chunks);
+        }
+    }
+
+    /**
+     * Splits the file into chunks that start right after a newline.
+     *
+     * @param channel The open file.
+     * @return The chunk boundaries: 0, the start of every other chunk and the file size.
+     * @throws IOException If the file cannot be read.
+     */
+    private List<Long> chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long target = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE / 2, size / threads + 1));
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+
+        ByteBuffer window = ByteBuffer.allocate(4096);
+        long pos = target;
+        while (pos < size) {
+            // Move forward to the byte after the next newline
+            long next = -1;
+            long scan = pos;
+            while (next < 0 && scan < size) {
+                window.clear();
+                int read = channel.read(window, scan);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (window.get(i) == '\n') {
+                        next = scan + i + 1;
+                        break;
+                    }
+                }
+                scan += read;
+            }
+            if (next < 0 || next >= size) {
+                break;
+            }
+            if (next - bounds.get(bounds.size() - 1) > MAX_CHUNK_SIZE) {
+                throw new IOException("Line longer than " + MAX_CHUNK_SIZE + " bytes near offset " + pos);
+            }
+            bounds.add(next);
+            pos = next + target;
+        }
+
+        bounds.add(size);
+        return bounds;
+    }
+
+    // Parse the lines of file[start, end), which begins at a line start
+    private Chunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+        Chunk chunk = new Chunk();
+        if (end <= start) {
+            return chunk;
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int limit = buffer.limit();
+        int[] tokenStart = new int[FIELDS];
+        int[] tokenEnd = new int[FIELDS];
+
+        int pos = 0;
+        while (pos < limit) {
+            int lineEnd = pos;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            chunk.lines++;
+
+            // Split the line at whitespace into its first FIELDS tokens; the rest of the line is
+            // ignored, as the original load(), which read parts[0..4] of the split line, did
+            int tokens = 0;
+            int i = pos;
+            while (i < lineEnd && tokens < FIELDS) {
+                while (i < lineEnd && isSpace(buffer.get(i))) {
+                    i++;
+                }
+                if (i == lineEnd) {
+                    break;
+                }
+                int tokenFrom = i;
+                while (i < lineEnd && !isSpace(buffer.get(i))) {
+                    i++;
+                }
+                tokenStart[tokens] = tokenFrom;
+                tokenEnd[tokens] = i;
+                tokens++;
+            }
+
+            if (tokens == FIELDS) {
+                try {
+                    int AFM = parseInt(buffer, tokenStart[0], tokenEnd[0]);
+                    double savings = parseDecimal(buffer, tokenStart[3], tokenEnd[3]);
+                    double taxedIncome = parseDecimal(buffer, tokenStart[4], tokenEnd[4]);
+                    int firstName = NameDictionary.SHARED.intern(buffer, tokenStart[1], tokenEnd[1]);
+                    int lastName = NameDictionary.SHARED.intern(buffer, tokenStart[2], tokenEnd[2]);
+                    chunk.depositors.add(new LargeDepositor(AFM, firstName, lastName, savings, taxedIncome));
+                } catch (NumberFormatException e) {
+                    chunk.errors.add(new ParseError(chunk.lines, e.getMessage()));
+                }
+            } else if (tokens != 0) {
+                // Blank lines are skipped silently, anything else must have all the fields
+                chunk.errors.add(new ParseError(chunk.lines, "expected " + FIELDS + " fields, found only " + tokens));
+            }
+
+            pos = lineEnd + 1;
+        }
+
+        return chunk;
+    }
+
+    // Concatenate the chunks in file order and turn chunk line numbers into file line numbers
+    private Result combine(List<Chunk> chunks) {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.depositors.size();
+        }
+
+        List<LargeDepositor> depositors = new ArrayList<>(total);
+        List<ParseError> errors = new ArrayList<>();
+        long linesBefore = 0;
+        for (Chunk chunk : chunks) {
+            depositors.addAll(chunk.depositors);
+            for (ParseError error : chunk.errors) {
+                errors.add(new ParseError(linesBefore + error.lineNumber, error.message));
+            }
+            linesBefore += chunk.lines;
+        }
+
+        return new Result(depositors, errors);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f';
+    }
+
+    /**
+     * Parses a decimal integer from buffer[from, to) without allocating.
+     *
+     * @throws NumberFormatException If the token is not an int.
+     */
+    static int parseInt(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        if (i == to) {
+            throw new NumberFormatException("invalid AFM " + token(buffer, from, to));
+        }
+
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("invalid AFM " + token(buffer, from, to));
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("AFM out of range " + token(buffer, from, to));
+            }
+        }
+
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("AFM out of range " + token(buffer, from, to));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a decimal number such as 1500, -20.75 or 1.5e3 from buffer[from, to).
+     * Numbers with up to 18 significant digits and a small exponent are computed exactly
+     * from a long mantissa and a power of ten; anything else (including NaN and Infinity)
+     * falls back to Double.parseDouble.
+     *
+     * @throws NumberFormatException If the token is not a number.
+     */
+    static double parseDecimal(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0; // Significant digits in the mantissa
+        int scale = 0; // Digits after the decimal point
+        boolean anyDigit = false;
+        boolean fraction = false;
+
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                anyDigit = true;
+                if (mantissa != 0 || b != '0') {
+                    if (++digits > 18) {
+                        return slowParseDecimal(buffer, from, to);
+                    }
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (fraction) {
+                    scale++;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!anyDigit) {
+            return slowParseDecimal(buffer, from, to);
+        }
+
+        int exponent = 0;
+        if (i < to) {
+            byte b = buffer.get(i);
+            if (b != 'e' && b != 'E') {
+                return slowParseDecimal(buffer, from, to);
+            }
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            if (i == to) {
+                return slowParseDecimal(buffer, from, to);
+            }
+            for (; i < to; i++) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || exponent > 1000) {
+                    return slowParseDecimal(buffer, from, to);
+                }
+                exponent = exponent * 10 + digit;
+            }
+            exponent = negativeExponent ? -exponent : exponent;
+        }
+
+        exponent -= scale;
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        } else {
+            return slowParseDecimal(buffer, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    // Rare inputs that the fast path does not cover
+    private static double slowParseDecimal(ByteBuffer buffer, int from, int to) {
+        String token = token(buffer, from, to);
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("invalid number " + token);
+        }
+    }
+
+    // The token as a String, only used for error messages and the slow path
+    private static String token(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic depositor data for benchmarks, in the same line format as filename.txt:
+ * AFM firstName lastName savings taxedIncome
+ *
+ * AFMs are distinct 9-digit numbers in scrambled order. Names are drawn from fixed pools
+ * (a few thousand last names, about a hundred first names) so that last name searches
+ * have realistic result sizes. The same seed always gives the same data.
+ *
+ * Usage: java DepositorGenerator output-file count [seed]
+ */
+public class DepositorGenerator {
+
+    private static final int FIRST_AFM = 100000000;
+    private static final long AFM_RANGE = 900000000L;
+    private static final long AFM_STRIDE = 1000000007L; // Prime, so i * stride mod range is a permutation
+
+    private static final String[] NAME_STARTS = {
+        "PAPA", "GEORGI", "NIKOL", "DIMITR", "KONSTANT", "IOANN", "VASIL", "CHRIST", "ANTON", "MICHAIL",
+        "ALEXANDR", "PANAGI", "STAVR", "THEODOR", "EMMANOUIL", "SPYR", "ATHANAS", "KYRIAK", "EVANGEL", "ANDRE"
+    };
+    private static final String[] NAME_MIDDLES = {
+        "", "AK", "OP", "OUL", "AT", "ID", "ON", "AR", "EL", "IT"
+    };
+    private static final String[] NAME_ENDS = {
+        "OPOULOS", "IDIS", "AKIS", "IOU", "ATOS", "OGLOU", "ELLIS", "AKOS", "IADIS", "OU"
+    };
+    private static final String[] FIRST_NAMES = {
+        "GIORGOS", "NIKOS", "DIMITRIS", "KOSTAS", "GIANNIS", "VASILIS", "CHRISTOS", "ANTONIS", "MICHALIS",
+        "ALEXANDROS", "PANAGIOTIS", "STAVROS", "THODORIS", "MANOLIS", "SPYROS", "THANASIS", "KYRIAKOS",
+        "VANGELIS", "ANDREAS", "PAVLOS", "SAVVAS", "MAKIS", "NAPOLEON", "MARIA", "ELENI", "KATERINA",
+        "SOFIA", "ANNA", "DESPINA", "GEORGIA", "IOANNA", "DIMITRA", "VASILIKI", "CHRISTINA", "ANGELIKI",
+        "ALEXANDRA", "PANAGIOTA", "STAVROULA", "THEODORA", "EIRINI", "ELPIDA", "KYRIAKI", "EVANGELIA",
+        "ANDRIANA", "PAVLINA", "ZOI", "NIKI", "ARGYRO", "CHRYSA", "FOTINI"
+    };
+
+    private DepositorGenerator() {
+    }
+
+    // Number of distinct last names the generator can produce
+    static int lastNameCount() {
+        return NAME_STARTS.length * NAME_MIDDLES.length * NAME_ENDS.length;
+    }
+
+    // The i-th last name of the pool
+    static String lastName(int i) {
+        int end = i % NAME_ENDS.length;
+        i /= NAME_ENDS.length;
+        int middle = i % NAME_MIDDLES.length;
+        i /= NAME_MIDDLES.length;
+        return NAME_STARTS[i % NAME_STARTS.length] + NAME_MIDDLES[middle] + NAME_ENDS[end];
+    }
+
+    // The AFM of the i-th generated depositor, distinct for i < 900000000. Only i + seed counts,
+    // so nearby seeds give shifted, overlapping AFM sequences: afm(i, seed + 1) == afm(i + 1, seed).
+    // Data sets of count depositors have disjoint AFMs if their seeds are at least count apart
+    static int afm(long i, long seed) {
+        return FIRST_AFM + (int) (Math.floorMod(i + seed, AFM_RANGE) * AFM_STRIDE % AFM_RANGE);
+    }
+
+    /**
+     * Generates the depositors in memory.
+     *
+     * @param count The number of depositors.
+     * @param seed The seed of the data.
+     * @return The depositors, in generation (not AFM) order.
+     */
+    static List<LargeDepositor> generate(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<LargeDepositor> depositors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            depositors.add(new LargeDepositor(afm(i, seed),
+                    FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+                    lastName(random.nextInt(lastNameCount())),
+                    cents(random, 2000000), cents(random, 200000)));
+        }
+        return depositors;
+    }
+
+    // Random amount in [0, max) with two decimal digits
+    private static double cents(SplittableRandom random, int max) {
+        return random.nextLong(max * 100L) / 100.0;
+    }
+
+    /**
+     * Writes generated depositors to a file, one per line.
+     *
+     * @param file The output file.
+     * @param count The number of depositors.
+     * @param seed The seed of the data.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(Path file, int count, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(64);
+            for (int i = 0; i < count; i++) {
+                line.setLength(0);
+                line.append(afm(i, seed)).append(' ')
+                        .append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append(' ')
+                        .append(lastName(random.nextInt(lastNameCount()))).append(' ')
+                        .append(cents(random, 2000000)).append(' ')
+                        .append(cents(random, 200000)).append('\n');
+                out.append(line);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java DepositorGenerator output-file count [seed]");
+            return;
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        write(Paths.get(args[0]), Integer.parseInt(args[1]), seed);
+    }
+}
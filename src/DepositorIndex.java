@@ -0,0 +1,500 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.random.RandomGenerator;
+
+/**
+ * Secondary ordered index over the depositors of a RandomizedBST.
+ * It is a randomized BST of its own, ordered by the given Comparator instead of the AFM,
+ * and it shares the LargeDepositor objects with the primary tree.
+ * The Comparator must be a total order (e.g. break ties by AFM), otherwise
+ * remove() cannot tell two depositors apart.
+ */
+class DepositorIndex {
+    private class IndexNode {
+        private LargeDepositor item;
+        private IndexNode left; // Pointer to left subtree
+        private IndexNode right; // Pointer to right subtree
+
+        int N; // Number of nodes in the subtree rooted at this IndexNode
+
+        public IndexNode(LargeDepositor item) {
+            this.item = item;
+            this.N = 1;
+        }
+    }
+
+    private static final Comparator<String> NAME_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    // Order by last name only, the part of BY_LAST_NAME that a name search must match; a null
+    // name comes first. Equal names have equal codes, so matching names are compared without
+    // looking at the Strings
+    static final Comparator<LargeDepositor> LAST_NAME = (a, b) -> a.getLastNameCode() == b.getLastNameCode()
+            ? 0 : NAME_ORDER.compare(a.getLastName(), b.getLastName());
+
+    // Order by last name, then by AFM so that equal names stay distinct
+    static final Comparator<LargeDepositor> BY_LAST_NAME = LAST_NAME.thenComparingInt(LargeDepositor::key);
+
+    // Order by suspicion (LargeDepositor.compareTo), then by AFM so that equal scores stay distinct
+    static final Comparator<LargeDepositor> BY_SUSPICION =
+            Comparator.<LargeDepositor>naturalOrder().thenComparingInt(LargeDepositor::key);
+
+    private final Comparator<LargeDepositor> order;
+    private final RandomGenerator random; // null for ThreadLocalRandom
+    private IndexNode root;
+
+    DepositorIndex(Comparator<LargeDepositor> order) {
+        this(order, null);
+    }
+
+    DepositorIndex(Comparator<LargeDepositor> order, RandomGenerator random) {
+        this.order = order;
+        this.random = random;
+    }
+
+    // Uniform random int in [0, bound)
+    private int randomInt(int bound) {
+        return random == null ? ThreadLocalRandom.current().nextInt(bound) : random.nextInt(bound);
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    private int size(IndexNode x) {
+        return x == null ? 0 : x.N;
+    }
+
+    // Insert a depositor, same randomized scheme as RandomizedBST.insertAsRoot
+    void insert(LargeDepositor item) {
+        root = insertAsRoot(item, root);
+    }
+
+    private IndexNode insertAsRoot(LargeDepositor item, IndexNode node) {
+        if (node == null) {
+            return new IndexNode(item);
+        }
+
+        node.N++;
+
+        if (randomInt(node.N + 1) == 0) {
+            return insertAtRoot(item, node);
+        } else if (order.compare(item, node.item) < 0) {
+            node.left = insertAsRoot(item, node.left);
+        } else {
+            node.right = insertAsRoot(item, node.right);
+        }
+
+        return node;
+    }
+
+    private IndexNode insertAtRoot(LargeDepositor item, IndexNode node) {
+        if (node == null) {
+            return new IndexNode(item);
+        }
+
+        if (order.compare(item, node.item) < 0) {
+            node.left = insertAtRoot(item, node.left);
+            node = rotateRight(node);
+        } else {
+            node.right = insertAtRoot(item, node.right);
+            node = rotateLeft(node);
+        }
+
+        return node;
+    }
+
+    private IndexNode rotateLeft(IndexNode node) {
+        IndexNode x = node.right;
+        node.right = x.left;
+        x.left = node;
+        x.N = node.N;
+        node.N = 1 + size(node.left) + size(node.right);
+        return x;
+    }
+
+    private IndexNode rotateRight(IndexNode node) {
+        IndexNode x = node.left;
+        node.left = x.right;
+        x.right = node;
+        x.N = node.N;
+        node.N = 1 + size(node.left) + size(node.right);
+        return x;
+    }
+
+    // Remove the entry that compares equal to the given depositor, if present
+    void remove(LargeDepositor item) {
+        root = remove(item, root);
+    }
+
+    private IndexNode remove(LargeDepositor item, IndexNode node) {
+        if (node == null) {
+            return null;
+        }
+
+        int cmp = order.compare(item, node.item);
+
+        if (cmp < 0) {
+            node.left = remove(item, node.left);
+        }
+        else if (cmp > 0) {
+            node.right = remove(item, node.right);
+        }
+        else {
+            node = join(node.left, node.right);
+        }
+
+        if (node != null) {
+            node.N = 1 + size(node.left) + size(node.right);
+        }
+
+        return node;
+    }
+
+    // Same randomized join as RandomizedBST.join
+    private IndexNode join(IndexNode a, IndexNode b) {
+        if (a == null) return b;
+        if (b == null) return a;
+
+        if (randomInt(a.N + b.N) < a.N) {
+            a.right = join(a.right, b);
+            a.N = 1 + size(a.left) + size(a.right);
+            return a;
+        } else {
+            b.left = join(a, b.left);
+            b.N = 1 + size(b.left) + size(b.right);
+            return b;
+        }
+    }
+
+    /**
+     * Adds many depositors at once in O(n + m log m): the new depositors are sorted in index
+     * order, merged with the in-order contents of the index and the index is rebuilt with
+     * uniformly random roots, like RandomizedBST.bulkLoad.
+     *
+     * @param items The depositors to add, none of them already in the index.
+     * @param count The number of depositors to take from the start of the array.
+     */
+    void bulkLoad(LargeDepositor[] items, int count) {
+        LargeDepositor[] incoming = Arrays.copyOf(items, count);
+        Arrays.sort(incoming, order);
+
+        LargeDepositor[] existing = new LargeDepositor[size(root)];
+        flatten(root, existing, 0);
+
+        LargeDepositor[] merged = new LargeDepositor[existing.length + incoming.length];
+        int i = 0, j = 0, k = 0;
+        while (i < existing.length && j < incoming.length) {
+            if (order.compare(existing[i], incoming[j]) <= 0) {
+                merged[k++] = existing[i++];
+            } else {
+                merged[k++] = incoming[j++];
+            }
+        }
+        while (i < existing.length) {
+            merged[k++] = existing[i++];
+        }
+        while (j < incoming.length) {
+            merged[k++] = incoming[j++];
+        }
+
+        root = build(merged, 0, merged.length - 1);
+    }
+
+    // The depositors of the index, in index order
+    LargeDepositor[] toArray() {
+        LargeDepositor[] items = new LargeDepositor[size(root)];
+        flatten(root, items, 0);
+        return items;
+    }
+
+    /**
+     * Replaces the contents of the index with depositors that are already in index order
+     * (e.g. read back from a snapshot), in linear time without sorting.
+     *
+     * @param sorted The depositors, strictly increasing under the index order.
+     */
+    void loadSorted(LargeDepositor[] sorted) {
+        root = build(sorted, 0, sorted.length - 1);
+    }
+
+    private int flatten(IndexNode node, LargeDepositor[] out, int pos) {
+        if (node == null) {
+            return pos;
+        }
+        pos = flatten(node.left, out, pos);
+        out[pos++] = node.item;
+        return flatten(node.right, out, pos);
+    }
+
+    // Build a subtree from sorted[lo..hi] with a uniformly random root at every level
+    private IndexNode build(LargeDepositor[] sorted, int lo, int hi) {
+        if (lo > hi) {
+            return null;
+        }
+
+        int mid = lo + randomInt(hi - lo + 1);
+        IndexNode node = new IndexNode(sorted[mid]);
+        node.left = build(sorted, lo, mid - 1);
+        node.right = build(sorted, mid + 1, hi);
+        node.N = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    /**
+     * Adds to the result, in index order, the depositors that come at or after 'from'
+     * for as long as they compare equal to 'from' under 'prefix',
+     * stopping early after 'limit' results.
+     * Runs in O(log n + k) for k results: it walks down to the first match once and then
+     * continues the in-order walk with an explicit stack.
+     *
+     * @param from The lower bound of the walk (inclusive), usually a probe object.
+     * @param prefix The ordering on the part of the key that must stay equal.
+     * @param limit The maximum number of results to add.
+     * @param result The queue that receives the matching depositors.
+     * @return The number of depositors added.
+     */
+    int collect(LargeDepositor from, Comparator<LargeDepositor> prefix, int limit,
+                StringDoubleEndedQueue<LargeDepositor> result) {
+        if (limit <= 0) {
+            return 0;
+        }
+
+        IndexNode[] stack = new IndexNode[32];
+        int depth = 0;
+        IndexNode node = root;
+
+        // Push the path to the first entry >= from; only nodes >= from are pushed
+        while (node != null) {
+            if (order.compare(node.item, from) >= 0) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+
+        int added = 0;
+        while (depth > 0) {
+            node = stack[--depth];
+            if (prefix.compare(node.item, from) != 0) {
+                break;
+            }
+            result.addLast(node.item);
+            if (++added == limit) {
+                break;
+            }
+
+            // Continue with the leftmost path of the right subtree
+            node = node.right;
+            while (node != null) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = node.left;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Counts the entries that come strictly before the given depositor in index order.
+     *
+     * @param item The depositor (or probe) to rank.
+     * @return The number of smaller entries, 0 to size().
+     */
+    int rank(LargeDepositor item) {
+        int rank = 0;
+        IndexNode node = root;
+        while (node != null) {
+            int cmp = order.compare(item, node.item);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += 1 + size(node.left);
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Adds to the result the entries in descending index order, skipping the 'skip' largest
+     * ones and stopping after 'limit' results.
+     * The first entry is found in O(log n) through the subtree sizes, so a page of k results
+     * costs O(k + log n) no matter how deep into the ranking it starts.
+     *
+     * @param skip The number of largest entries to skip.
+     * @param limit The maximum number of results to add.
+     * @param result The queue that receives the depositors.
+     * @return The number of depositors added.
+     */
+    int collectDescending(int skip, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        if (skip < 0 || skip >= size(root) || limit <= 0) {
+            return 0;
+        }
+
+        IndexNode[] stack = new IndexNode[32];
+        int depth = 0;
+        IndexNode node = root;
+        // Ascending position of the first entry to return
+        int r = size(root) - 1 - skip;
+
+        // Push the nodes that are <= the starting entry on its search path
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (r < leftSize) {
+                node = node.left;
+            } else {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                if (r == leftSize) {
+                    break;
+                }
+                r -= leftSize + 1;
+                node = node.right;
+            }
+        }
+
+        int added = 0;
+        while (depth > 0 && added < limit) {
+            node = stack[--depth];
+            result.addLast(node.item);
+            added++;
+
+            // Continue with the rightmost path of the left subtree
+            node = node.left;
+            while (node != null) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = node.right;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Returns a spliterator over all entries, in index order or in descending index order.
+     * The entries must not be changed while it is in use.
+     *
+     * @param descending true to start with the largest entry.
+     * @return The spliterator, SIZED and SUBSIZED so that parallel streams split it evenly.
+     */
+    Spliterator<LargeDepositor> spliterator(boolean descending) {
+        return new PositionSpliterator(root, 0, size(root), descending);
+    }
+
+    /**
+     * Spliterator over the entries at positions [from, to) of the walk order (ascending or
+     * descending). It finds its first entry in O(log n) through the subtree sizes and then
+     * walks the tree with an explicit stack. trySplit halves the remaining positions, so the
+     * halves have exact sizes no matter how the tree is shaped.
+     */
+    private class PositionSpliterator implements Spliterator<LargeDepositor> {
+        private final IndexNode top;
+        private int from; // Position of the next entry
+        private final int to;
+        private final boolean descending;
+        private IndexNode[] stack; // Path to the next entry, null until the first advance
+        private int depth;
+
+        PositionSpliterator(IndexNode top, int from, int to, boolean descending) {
+            this.top = top;
+            this.from = from;
+            this.to = to;
+            this.descending = descending;
+        }
+
+        // Push the nodes of the path to the entry at position 'from' that are still to visit
+        private void seek() {
+            stack = new IndexNode[32];
+            depth = 0;
+            IndexNode node = top;
+            // Ascending position of the entry
+            int r = descending ? size(top) - 1 - from : from;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (r == leftSize) {
+                    push(node);
+                    break;
+                }
+                // On the way down keep the nodes that come after the entry in walk order
+                if (r < leftSize) {
+                    if (!descending) {
+                        push(node);
+                    }
+                    node = node.left;
+                } else {
+                    if (descending) {
+                        push(node);
+                    }
+                    r -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        }
+
+        private void push(IndexNode node) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            stack[depth++] = node;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super LargeDepositor> action) {
+            if (from >= to) {
+                return false;
+            }
+            if (stack == null) {
+                seek();
+            }
+            IndexNode node = stack[--depth];
+            // Continue with the nearest path of the subtree on the far side
+            IndexNode next = descending ? node.left : node.right;
+            while (next != null) {
+                push(next);
+                next = descending ? next.right : next.left;
+            }
+            from++;
+            action.accept(node.item);
+            return true;
+        }
+
+        @Override
+        public Spliterator<LargeDepositor> trySplit() {
+            int mid = (from + to) >>> 1;
+            if (mid <= from) {
+                return null;
+            }
+            PositionSpliterator prefix = new PositionSpliterator(top, from, mid, descending);
+            from = mid;
+            stack = null; // Seek again from the new start
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | DISTINCT;
+        }
+    }
+}
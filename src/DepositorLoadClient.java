@@ -0,0 +1,192 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for a DepositorServer on this machine. Every connection sends its requests in
+ * pipelined groups of 'pipeline' requests and then reads the group's answers; the latency of a
+ * request is the time from sending its group to reading its answer.
+ *
+ * The AFMs come from the same generator and seed as "DepositorServer --generate", so most
+ * searches hit (a tenth are for AFMs that are not in the tree). The request mix is 80% search,
+ * 10% update, 5% range of 10, 4% top 10 and 1% mean.
+ *
+ * Usage: java DepositorLoadClient [--port 7070 | --unix path] [--generate 1000000] [--seed 1]
+ *                                 [--connections 4] [--requests 100000] [--pipeline 16]
+ */
+public class DepositorLoadClient {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    public static void main(String[] args) throws Exception {
+        String port = "7070";
+        String unixPath = null;
+        int generate = 1000000;
+        long seed = 1;
+        int connections = 4;
+        int requests = 100000;
+        int pipeline = 16;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port":
+                    port = args[i + 1];
+                    break;
+                case "--unix":
+                    unixPath = args[i + 1];
+                    break;
+                case "--generate":
+                    generate = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--requests":
+                    requests = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--pipeline":
+                    pipeline = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        List<LargeDepositor> depositors = DepositorGenerator.generate(generate, seed);
+        int[] afms = new int[depositors.size()];
+        for (int i = 0; i < afms.length; i++) {
+            afms[i] = depositors.get(i).key();
+        }
+        Arrays.sort(afms);
+
+        SocketAddress address = DepositorServer.address(port, unixPath);
+        ExecutorService pool = Executors.newFixedThreadPool(connections);
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Future<long[]>> results = new ArrayList<>();
+        int perConnection = requests / connections;
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            SplittableRandom connectionRandom = random.split();
+            int batchSize = pipeline;
+            results.add(pool.submit(() -> run(address, afms, perConnection, batchSize, connectionRandom)));
+        }
+
+        long[] latencies = new long[perConnection * connections];
+        int count = 0;
+        for (Future<long[]> result : results) {
+            long[] connectionLatencies = result.get();
+            System.arraycopy(connectionLatencies, 0, latencies, count, connectionLatencies.length);
+            count += connectionLatencies.length;
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        Arrays.sort(latencies, 0, count);
+        System.out.printf("%d requests over %d connections, pipeline %d: %.0f requests/s%n",
+                count, connections, pipeline, count / (elapsed / 1e9));
+        System.out.printf("latency p50 %.1f us, p99 %.1f us, max %.1f us%n", percentile(latencies, count, 50) / 1e3,
+                percentile(latencies, count, 99) / 1e3, latencies[count - 1] / 1e3);
+    }
+
+    // Latency at the given percentile of the sorted latencies[0..count)
+    private static long percentile(long[] latencies, int count, double percentile) {
+        int index = (int) Math.ceil(count * percentile / 100.0) - 1;
+        return latencies[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * Sends the requests of one connection in pipelined groups.
+     *
+     * @return The latency of every request, in nanoseconds.
+     */
+    private static long[] run(SocketAddress address, int[] afms, int requests, int pipeline,
+                              SplittableRandom random) throws IOException {
+        long[] latencies = new long[requests];
+        try (SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open()) {
+            channel.connect(address);
+            if (!(address instanceof UnixDomainSocketAddress)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                    StandardCharsets.UTF_8), BUFFER_SIZE);
+            Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                    StandardCharsets.UTF_8), BUFFER_SIZE);
+
+            boolean[] hasRows = new boolean[pipeline]; // Whether the answer is "OK count" and rows
+            for (int sent = 0; sent < requests; ) {
+                int group = Math.min(pipeline, requests - sent);
+                for (int i = 0; i < group; i++) {
+                    String request = request(afms, random);
+                    hasRows[i] = request.charAt(0) == 'g' || request.charAt(0) == 't';
+                    out.write(request);
+                }
+                long groupStart = System.nanoTime();
+                out.flush();
+                for (int i = 0; i < group; i++) {
+                    readAnswer(in, hasRows[i]);
+                    latencies[sent + i] = System.nanoTime() - groupStart;
+                }
+                sent += group;
+            }
+        }
+        return latencies;
+    }
+
+    // One random request of the mix, with its newline
+    private static String request(int[] afms, SplittableRandom random) {
+        int afm = afms[random.nextInt(afms.length)];
+        if (random.nextInt(10) == 0) {
+            afm++; // Usually not in the tree
+        }
+        int kind = random.nextInt(100);
+        if (kind < 80) {
+            return "s " + afm + "\n";
+        } else if (kind < 90) {
+            return "u " + afm + " " + random.nextInt(1000000) + "\n";
+        } else if (kind < 95) {
+            return "g " + afm + " " + Integer.MAX_VALUE + " 10\n";
+        } else if (kind < 99) {
+            return "t 10\n";
+        }
+        return "m\n";
+    }
+
+    // Read one answer: its status line and, for range and top k, the rows
+    private static void readAnswer(BufferedReader in, boolean hasRows) throws IOException {
+        String status = in.readLine();
+        if (status == null) {
+            throw new IOException("Server closed the connection");
+        }
+        if (status.startsWith("ERR")) {
+            throw new IOException("Server answered " + status);
+        }
+        if (hasRows) {
+            int rows = Integer.parseInt(status.substring(3));
+            for (int i = 0; i < rows; i++) {
+                in.readLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the changes to a set of depositors (insert, updateSavings, remove).
+ *
+ * Appending only copies the entry into a memory buffer. A flusher thread writes the buffer
+ * and fsyncs the file in groups: as soon as the buffer holds 'groupBytes' bytes, or when the
+ * oldest buffered entry has waited 'maxDelayMillis', whichever comes first. So one fsync
+ * covers many entries, and a caller that needs durability waits for the group its entry is in
+ * (see awaitDurable) instead of paying for an fsync of its own.
+ *
+ * Every entry is framed as its payload length (int), the payload and a CRC32 of the payload,
+ * so replay can detect an entry that was torn by a crash and stops before it.
+ */
+class DepositorLog implements Closeable {
+
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte REMOVE = 3;
+
+    // Appenders wait for the flusher once this many groups are buffered
+    private static final int MAX_PENDING_GROUPS = 64;
+
+    // Receives the entries of a log during replay, in log order
+    interface Listener {
+        void insert(LargeDepositor item);
+
+        void updateSavings(int AFM, double savings);
+
+        void remove(int AFM);
+    }
+
+    private final FileChannel channel;
+    private final int groupBytes;
+    private final long maxDelayNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataReady = lock.newCondition(); // Signalled to the flusher
+    private final Condition flushed = lock.newCondition(); // Signalled by the flusher
+    private ByteBuffer pending; // Entries not yet handed to the flusher
+    private ByteBuffer spare; // The flusher's buffer, swapped with pending
+    private long firstPendingNanos; // When the oldest pending entry was appended
+    private long appended; // Offset after the last appended entry, counting bytes ever appended
+    private long durable; // Offset up to which the entries are fsynced
+    private boolean closed;
+    private IOException failure; // The first write error, reported to every later caller
+    private final Thread flusher;
+
+    /**
+     * Opens a log for appending; an existing file is kept and cut back to 'validLength'
+     * (see replay), dropping a torn last entry.
+     *
+     * @param file The log file, created if it does not exist.
+     * @param validLength The length of the valid entries of the file, 0 for a new log.
+     * @param groupBytes The number of buffered bytes that triggers a write and fsync.
+     * @param maxDelayMillis The longest time an entry stays buffered before it is written.
+     * @throws IOException If the file cannot be opened.
+     */
+    DepositorLog(Path file, long validLength, int groupBytes, long maxDelayMillis) throws IOException {
+        if (groupBytes <= 0 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Bad group commit settings: " + groupBytes + " bytes, " + maxDelayMillis + " ms");
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.groupBytes = groupBytes;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.pending = ByteBuffer.allocate(Math.max(groupBytes, 256));
+        this.spare = ByteBuffer.allocate(Math.max(groupBytes, 256));
+
+        channel.truncate(validLength);
+        channel.position(validLength);
+        appended = validLength;
+        durable = validLength;
+
+        flusher = new Thread(this::flushLoop, "depositor-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Appends an insert entry.
+     *
+     * @return The log offset after the entry, for awaitDurable.
+     */
+    long appendInsert(LargeDepositor item) throws IOException {
+        byte[] firstName = bytes(item.getFirstName());
+        byte[] lastName = bytes(item.getLastName());
+        ByteBuffer payload = ByteBuffer.allocate(1 + 4 + 8 + 8 + 4 + length(firstName) + 4 + length(lastName));
+        payload.put(INSERT).putInt(item.key()).putDouble(item.getSavings()).putDouble(item.getTaxedIncome());
+        putString(payload, firstName);
+        putString(payload, lastName);
+        return append(payload.array());
+    }
+
+    // The UTF-8 bytes of a name, null for a null name
+    private static byte[] bytes(String name) {
+        return name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    // A name as its length and bytes; a null name is length -1, as its code in a snapshot
+    private static void putString(ByteBuffer payload, byte[] bytes) {
+        if (bytes == null) {
+            payload.putInt(-1);
+        } else {
+            payload.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    // Appends an update entry, returns the log offset after it
+    long appendUpdate(int AFM, double savings) throws IOException {
+        return append(ByteBuffer.allocate(1 + 4 + 8).put(UPDATE).putInt(AFM).putDouble(savings).array());
+    }
+
+    // Appends a remove entry, returns the log offset after it
+    long appendRemove(int AFM) throws IOException {
+        return append(ByteBuffer.allocate(1 + 4).put(REMOVE).putInt(AFM).array());
+    }
+
+    private long append(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int length = Integer.BYTES + payload.length + Integer.BYTES;
+
+        lock.lock();
+        try {
+            // Back-pressure: do not let the buffer grow without bound if the disk is slower
+            while (pending.position() >= MAX_PENDING_GROUPS * groupBytes && !closed && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            checkOpen();
+
+            if (pending.remaining() < length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + length));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            if (pending.position() == 0) {
+                firstPendingNanos = System.nanoTime();
+                dataReady.signal(); // Starts the flusher's delay
+            }
+            pending.putInt(payload.length).put(payload).putInt((int) crc.getValue());
+            appended += length;
+            if (pending.position() >= groupBytes) {
+                dataReady.signal();
+            }
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw new IOException("Log write failed earlier", failure);
+        }
+        if (closed) {
+            throw new IOException("Log is closed");
+        }
+    }
+
+    /**
+     * Waits until the log is fsynced up to the given offset.
+     *
+     * @param offset An offset returned by one of the append methods.
+     * @throws IOException If writing the log failed.
+     */
+    void awaitDurable(long offset) throws IOException {
+        lock.lock();
+        try {
+            if (durable < offset) {
+                dataReady.signal(); // Nothing to gain from waiting for a fuller group
+            }
+            while (durable < offset && failure == null) {
+                flushed.await();
+            }
+            if (durable < offset) {
+                throw new IOException("Log write failed", failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the log");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until everything appended so far is fsynced
+    void sync() throws IOException {
+        long offset;
+        lock.lock();
+        try {
+            offset = appended;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(offset);
+    }
+
+    /**
+     * Empties the log, e.g. once its entries are folded into a snapshot. The caller makes
+     * sure that nothing is appended while this runs.
+     */
+    void truncate() throws IOException {
+        sync();
+        lock.lock();
+        try {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            // Offsets keep growing, so a caller still waiting for an earlier entry is not confused
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes out and fsyncs every entry that becomes pending, in groups
+    private void flushLoop() {
+        lock.lock();
+        try {
+            while (true) {
+                while (pending.position() == 0 && !closed) {
+                    dataReady.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return; // Closed and nothing left to write
+                }
+                // Wait for a full group, the delay of the oldest entry or a caller that needs it now
+                long waited = System.nanoTime() - firstPendingNanos;
+                if (pending.position() < groupBytes && waited < maxDelayNanos && !closed && !hasWaiters()) {
+                    try {
+                        dataReady.awaitNanos(maxDelayNanos - waited);
+                    } catch (InterruptedException e) {
+                        // Keep flushing, the log is only stopped by close()
+                    }
+                    continue;
+                }
+
+                ByteBuffer group = pending;
+                pending = spare;
+                spare = group;
+                long groupEnd = appended;
+                lock.unlock();
+                IOException error = null;
+                try {
+                    group.flip();
+                    while (group.hasRemaining()) {
+                        channel.write(group);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    group.clear();
+                    lock.lock();
+                }
+
+                if (error != null) {
+                    failure = error;
+                    flushed.signalAll();
+                    return;
+                }
+                durable = groupEnd;
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Whether some caller is blocked in awaitDurable or in append, the caller holds the lock
+    private boolean hasWaiters() {
+        return lock.hasWaiters(flushed);
+    }
+
+    // Writes out and fsyncs everything appended so far, then closes the file
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            dataReady.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw new IOException("Log write failed", failure);
+        }
+    }
+
+    /**
+     * Passes the entries of a log file to the listener, in order. Replay stops at the end of
+     * the file or at the first entry that is incomplete or fails its checksum, which is what a
+     * crash in the middle of a write leaves behind.
+     *
+     * @param file The log file; a missing file is an empty log.
+     * @param listener The receiver of the entries.
+     * @return The length of the valid part of the file, to pass to the constructor.
+     * @throws IOException If the file cannot be read.
+     */
+    static long replay(Path file, Listener listener) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        CRC32 crc = new CRC32();
+        int position = 0;
+        while (map.limit() - position >= Integer.BYTES) {
+            int length = map.getInt(position);
+            if (length <= 0 || map.limit() - position - 2 * Integer.BYTES < length) {
+                break; // Torn entry
+            }
+            ByteBuffer payload = map.slice(position + Integer.BYTES, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != map.getInt(position + Integer.BYTES + length)) {
+                break;
+            }
+            if (!apply(payload, listener)) {
+                break;
+            }
+            position += 2 * Integer.BYTES + length;
+        }
+        return position;
+    }
+
+    // Decode one entry and pass it on, false if it is not a known entry
+    private static boolean apply(ByteBuffer payload, Listener listener) {
+        byte type = payload.get();
+        if (type == INSERT) {
+            int AFM = payload.getInt();
+            double savings = payload.getDouble();
+            double taxedIncome = payload.getDouble();
+            String firstName = string(payload);
+            String lastName = string(payload);
+            listener.insert(new LargeDepositor(AFM, firstName, lastName, savings, taxedIncome));
+        } else if (type == UPDATE) {
+            listener.updateSavings(payload.getInt(), payload.getDouble());
+        } else if (type == REMOVE) {
+            listener.remove(payload.getInt());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    // A name written by putString, null for length -1
+    private static String string(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
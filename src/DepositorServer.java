@@ -0,0 +1,403 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves queries on a RandomizedBST to local clients over TCP (loopback only) or a Unix domain
+ * socket, so that the tree is loaded once and stays in memory.
+ *
+ * Line protocol, UTF-8, one request per line:
+ *   s AFM                  search     -> "OK depositor" or "NF"
+ *   u AFM savings          update     -> "OK" or "NF"
+ *   g lowAFM highAFM limit AFM range  -> "OK count" and then count depositor lines
+ *   t k                    top k      -> "OK count" and then count depositor lines
+ *   m                      mean       -> "OK mean"
+ * A request that cannot be parsed gets "ERR message". Depositors are written as by toString().
+ *
+ * Every connection has its own thread: a virtual thread where the runtime has them, a pooled
+ * platform thread otherwise. Clients may pipeline: all the requests that have arrived when the
+ * connection is served are answered as one batch under one lock acquisition, consecutive
+ * searches with one merged lookup (see RandomizedBST.searchByAFM(int[])), and with one flush.
+ *
+ * Usage: java DepositorServer [--port 7070 | --unix path] [--load file | --generate count] [--seed 1]
+ */
+public class DepositorServer implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_BATCH = 4096; // Requests answered per lock acquisition
+    private static final int MAX_ROWS = 100000; // Rows of one range or top k answer
+
+    // One parsed request of a batch
+    private static final class Request {
+        final char op;
+        final int first;
+        final int second;
+        final double value;
+        final String error; // Why the request is invalid, null if it is valid
+
+        Request(char op, int first, int second, double value, String error) {
+            this.op = op;
+            this.first = first;
+            this.second = second;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Reads lines from a connection. Unlike BufferedReader.ready(), hasLine() tells whether a
+     * whole line is already buffered, so a batch never waits for the rest of a line that the
+     * client has only partly sent.
+     */
+    private static final class LineReader {
+        private final InputStream in;
+        private byte[] buffer = new byte[BUFFER_SIZE];
+        private int start = 0; // First byte not yet returned
+        private int end = 0; // Byte after the last one read
+        private int scanned = 0; // Bytes from start on that are known to hold no '\n'
+
+        LineReader(InputStream in) {
+            this.in = in;
+        }
+
+        // Whether a complete line is buffered, i.e. readLine() will not block
+        boolean hasLine() {
+            return newline() >= 0;
+        }
+
+        /**
+         * Returns the next line without its terminator ("\n" or "\r\n"), reading from the
+         * connection only if no complete line is buffered.
+         *
+         * @return The line, or null at the end of the input.
+         * @throws IOException If the connection cannot be read.
+         */
+        String readLine() throws IOException {
+            int newline;
+            while ((newline = newline()) < 0) {
+                if (end == buffer.length) {
+                    if (start > 0) {
+                        // Move the partial line to the front
+                        System.arraycopy(buffer, start, buffer, 0, end - start);
+                        end -= start;
+                        scanned -= start;
+                        start = 0;
+                    } else {
+                        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                    }
+                }
+                int read = in.read(buffer, end, buffer.length - end);
+                if (read < 0) {
+                    if (start == end) {
+                        return null;
+                    }
+                    // The last line has no terminator
+                    String line = new String(buffer, start, end - start, StandardCharsets.UTF_8);
+                    start = end;
+                    scanned = end;
+                    return line;
+                }
+                end += read;
+            }
+
+            int lineEnd = newline > start && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+            String line = new String(buffer, start, lineEnd - start, StandardCharsets.UTF_8);
+            start = newline + 1;
+            scanned = start;
+            return line;
+        }
+
+        // Position of the first buffered '\n', or -1
+        private int newline() {
+            for (int i = Math.max(scanned, start); i < end; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+            }
+            scanned = end;
+            return -1;
+        }
+    }
+
+    private final RandomizedBST tree;
+    private final ServerSocketChannel server;
+    private final Path socketFile; // The Unix domain socket file, null for TCP
+    private final ExecutorService connections = newConnectionExecutor();
+
+    /**
+     * Opens the server socket; serve() starts answering.
+     *
+     * @param tree The depositors. The server locks the tree for every batch, so other threads
+     *             that use it must synchronize on it too.
+     * @param address An InetSocketAddress or a UnixDomainSocketAddress.
+     * @throws IOException If the address cannot be bound.
+     */
+    public DepositorServer(RandomizedBST tree, SocketAddress address) throws IOException {
+        this.tree = tree;
+        if (address instanceof UnixDomainSocketAddress) {
+            socketFile = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(socketFile); // Left behind by a server that was killed
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            socketFile = null;
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address);
+    }
+
+    // One virtual thread per connection where the runtime has them (Java 21), otherwise a cached pool
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "depositor-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // The bound address, e.g. to find the port chosen for port 0
+    public SocketAddress getAddress() throws IOException {
+        return server.getLocalAddress();
+    }
+
+    // Accepts connections until close() is called
+    public void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                if (socketFile == null) {
+                    // Answers are flushed once per batch, there is nothing to gain from Nagle's delay
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                connections.execute(() -> handle(channel));
+            }
+        } catch (ClosedChannelException e) {
+            // close() was called
+        }
+    }
+
+    // Answers the requests of one connection until the client closes it
+    private void handle(SocketChannel channel) {
+        try (channel;
+             Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                     StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            LineReader in = new LineReader(Channels.newInputStream(channel));
+            List<Request> batch = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                // The first request blocks; the pipelined ones behind it join the batch only if
+                // they are complete, so the answers never wait for the end of a partial line
+                batch.add(parse(line));
+                while (batch.size() < MAX_BATCH && in.hasLine()) {
+                    batch.add(parse(in.readLine()));
+                }
+                answer(batch, out);
+                out.flush();
+                batch.clear();
+            }
+        } catch (IOException e) {
+            // The client went away, nothing to answer any more
+        }
+    }
+
+    private static Request parse(String line) {
+        String[] fields = line.trim().split(" +");
+        char op = fields[0].length() == 1 ? fields[0].charAt(0) : '?';
+        try {
+            switch (op) {
+                case 's':
+                    expect(fields, 2);
+                    return new Request(op, Integer.parseInt(fields[1]), 0, 0, null);
+                case 'u':
+                    expect(fields, 3);
+                    return new Request(op, Integer.parseInt(fields[1]), 0, Double.parseDouble(fields[2]), null);
+                case 'g':
+                    expect(fields, 4);
+                    return new Request(op, Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Integer.parseInt(fields[3]), null);
+                case 't':
+                    expect(fields, 2);
+                    return new Request(op, Integer.parseInt(fields[1]), 0, 0, null);
+                case 'm':
+                    expect(fields, 1);
+                    return new Request(op, 0, 0, 0, null);
+                default:
+                    return new Request(op, 0, 0, 0, "unknown request " + line);
+            }
+        } catch (IllegalArgumentException e) {
+            return new Request(op, 0, 0, 0, "malformed request " + line);
+        }
+    }
+
+    private static void expect(String[] fields, int count) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // Answer a batch in order, holding the tree for the whole batch
+    private void answer(List<Request> batch, Writer out) throws IOException {
+        StringBuilder response = new StringBuilder();
+        synchronized (tree) {
+            for (int i = 0; i < batch.size(); ) {
+                Request request = batch.get(i);
+                if (request.error != null) {
+                    response.append("ERR ").append(request.error).append('\n');
+                    i++;
+                } else if (request.op == 's') {
+                    // A run of searches is one merged lookup
+                    int end = i;
+                    while (end < batch.size() && batch.get(end).op == 's' && batch.get(end).error == null) {
+                        end++;
+                    }
+                    int[] afms = new int[end - i];
+                    for (int j = 0; j < afms.length; j++) {
+                        afms[j] = batch.get(i + j).first;
+                    }
+                    for (LargeDepositor item : tree.searchByAFM(afms)) {
+                        if (item != null) {
+                            response.append("OK ").append(item).append('\n');
+                        } else {
+                            response.append("NF\n");
+                        }
+                    }
+                    i = end;
+                } else {
+                    answer(request, response);
+                    i++;
+                }
+            }
+        }
+        out.append(response);
+    }
+
+    private void answer(Request request, StringBuilder response) {
+        switch (request.op) {
+            case 'u':
+                response.append(tree.updateSavings(request.first, request.value) ? "OK\n" : "NF\n");
+                break;
+            case 'g': {
+                List<LargeDepositor> rows = new ArrayList<>();
+                int limit = Math.min((int) request.value, MAX_ROWS);
+                Iterator<LargeDepositor> range = tree.rangeByAFM(request.first, request.second);
+                while (rows.size() < limit && range.hasNext()) {
+                    rows.add(range.next());
+                }
+                rows(rows, response);
+                break;
+            }
+            case 't': {
+                List<LargeDepositor> rows = new ArrayList<>();
+                Iterator<LargeDepositor> top = tree.iteratorBySuspicion();
+                int limit = Math.min(request.first, MAX_ROWS);
+                while (rows.size() < limit && top.hasNext()) {
+                    rows.add(top.next());
+                }
+                rows(rows, response);
+                break;
+            }
+            default: // 'm'
+                response.append("OK ").append(tree.getMeanSavings()).append('\n');
+                break;
+        }
+    }
+
+    private static void rows(List<LargeDepositor> rows, StringBuilder response) {
+        response.append("OK ").append(rows.size()).append('\n');
+        for (LargeDepositor item : rows) {
+            response.append(item).append('\n');
+        }
+    }
+
+    // Stop accepting connections and close the open ones
+    @Override
+    public void close() throws IOException {
+        server.close();
+        connections.shutdownNow();
+        try {
+            connections.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (socketFile != null) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+
+    // The loopback port or the socket file given on the command line
+    static SocketAddress address(String port, String unixPath) {
+        if (unixPath != null) {
+            return UnixDomainSocketAddress.of(unixPath);
+        }
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(port));
+    }
+
+    public static void main(String[] args) throws IOException {
+        String port = "7070";
+        String unixPath = null;
+        String file = null;
+        int generate = 0;
+        long seed = 1;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port":
+                    port = args[i + 1];
+                    break;
+                case "--unix":
+                    unixPath = args[i + 1];
+                    break;
+                case "--load":
+                    file = args[i + 1];
+                    break;
+                case "--generate":
+                    generate = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        RandomizedBST tree = new RandomizedBST(seed);
+        if (file != null) {
+            tree.load(file);
+        } else if (generate > 0) {
+            tree.bulkLoad(DepositorGenerator.generate(generate, seed));
+        }
+
+        try (DepositorServer server = new DepositorServer(tree, address(port, unixPath))) {
+            System.out.println("Serving " + tree.size() + " depositors on " + server.getAddress());
+            server.serve();
+        }
+    }
+}
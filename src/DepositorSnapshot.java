@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a set of depositors, for restarting without reparsing the text file.
+ *
+ * Layout (big-endian):
+ *   header   magic "DPSN", version, record count, string count, string table length, CRC32
+ *            (six ints, 24 bytes)
+ *   records  one fixed-width record of 28 bytes per depositor, in ascending AFM order:
+ *            AFM (int), first name code (int), last name code (int), savings (double),
+ *            taxed income (double); a null name has code -1
+ *   orders   the record numbers in (last name, AFM) order, then in (suspicion, AFM) order
+ *            (one int each), so that the secondary indexes are rebuilt without sorting
+ *   strings  the distinct names, each as its UTF-8 length (int) and bytes; a name's code is
+ *            its position in the table
+ * The CRC32 covers everything after the header.
+ *
+ * A snapshot is written to a temporary file that replaces the target only once it is
+ * complete, so a crash while saving leaves the previous snapshot intact.
+ */
+class DepositorSnapshot {
+
+    private static final int MAGIC = 0x4450534E; // "DPSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int RECORD_SIZE = 28;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // The depositors of a snapshot, in the order of the tree and of each secondary index
+    static class Contents {
+        final LargeDepositor[] byAFM;
+        final LargeDepositor[] byLastName;
+        final LargeDepositor[] bySuspicion;
+
+        Contents(LargeDepositor[] byAFM, LargeDepositor[] byLastName, LargeDepositor[] bySuspicion) {
+            this.byAFM = byAFM;
+            this.byLastName = byLastName;
+            this.bySuspicion = bySuspicion;
+        }
+    }
+
+    private DepositorSnapshot() {
+    }
+
+    /**
+     * Writes the depositors to a snapshot file through a FileChannel.
+     *
+     * @param file The snapshot file, replaced if it exists.
+     * @param contents The depositors in AFM order and the same depositors in the order of each
+     *                 secondary index.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(Path file, Contents contents) throws IOException {
+        LargeDepositor[] depositors = contents.byAFM;
+        int count = depositors.length;
+        int[] afms = new int[count];
+        for (int i = 0; i < count; i++) {
+            afms[i] = depositors[i].key();
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        // String table position + 1 of every NameDictionary code, 0 while the name is not in the table
+        int[] codes = new int[NameDictionary.SHARED.size()];
+        List<String> names = new ArrayList<>();
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+
+            for (int i = 0; i < count; i++) {
+                LargeDepositor item = depositors[i];
+                if (buffer.remaining() < RECORD_SIZE) {
+                    flush(channel, buffer, crc);
+                }
+                buffer.putInt(item.key());
+                buffer.putInt(code(item.getFirstNameCode(), codes, names));
+                buffer.putInt(code(item.getLastNameCode(), codes, names));
+                buffer.putDouble(item.getSavings());
+                buffer.putDouble(item.getTaxedIncome());
+            }
+
+            for (LargeDepositor[] order : new LargeDepositor[][] {contents.byLastName, contents.bySuspicion}) {
+                for (LargeDepositor item : order) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer, crc);
+                    }
+                    buffer.putInt(Arrays.binarySearch(afms, item.key()));
+                }
+            }
+
+            long stringTableStart = channel.position() + buffer.position();
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < Integer.BYTES) {
+                    flush(channel, buffer, crc);
+                }
+                buffer.putInt(bytes.length);
+                int written = 0;
+                while (written < bytes.length) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer, crc);
+                    }
+                    int length = Math.min(buffer.remaining(), bytes.length - written);
+                    buffer.put(bytes, written, length);
+                    written += length;
+                }
+            }
+            flush(channel, buffer, crc);
+            long stringTableLength = channel.position() - stringTableStart;
+            if (stringTableLength > Integer.MAX_VALUE) {
+                throw new IOException("String table too large: " + stringTableLength + " bytes");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(names.size())
+                    .putInt((int) stringTableLength).putInt((int) crc.getValue());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Position of the name in the string table, adding it if it is new; -1 for a null name
+    private static int code(int nameCode, int[] codes, List<String> names) {
+        if (nameCode == NameDictionary.NIL) {
+            return -1;
+        }
+        if (codes[nameCode] == 0) {
+            names.add(NameDictionary.SHARED.name(nameCode));
+            codes[nameCode] = names.size();
+        }
+        return codes[nameCode] - 1;
+    }
+
+    // Write out the buffered bytes and add them to the checksum
+    private static void flush(FileChannel channel, ByteBuffer buffer, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads a snapshot by memory-mapping it. The names of the string table are interned into
+     * NameDictionary.SHARED straight from the mapped bytes, once each.
+     *
+     * @param file The snapshot file.
+     * @return The depositors in AFM order and in the order of each secondary index.
+     * @throws IOException If the file cannot be read, or is not a valid snapshot of this version.
+     */
+    static Contents read(Path file) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + ": not a snapshot (size " + channel.size() + ")");
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (map.getInt(0) != MAGIC) {
+            throw new IOException(file + ": not a snapshot (bad magic number)");
+        }
+        int version = map.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(file + ": unsupported snapshot version " + version);
+        }
+        int count = map.getInt(8);
+        int stringCount = map.getInt(12);
+        int stringTableLength = map.getInt(16);
+        int checksum = map.getInt(20);
+        long expectedSize = HEADER_SIZE + (long) count * (RECORD_SIZE + 2 * Integer.BYTES) + stringTableLength;
+        if (count < 0 || stringCount < 0 || stringTableLength < 0 || expectedSize != map.capacity()) {
+            throw new IOException(file + ": truncated or corrupt snapshot");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(map.duplicate().position(HEADER_SIZE));
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException(file + ": snapshot checksum mismatch");
+        }
+
+        int[] names = new int[stringCount]; // NameDictionary code of every string
+        int position = HEADER_SIZE + count * (RECORD_SIZE + 2 * Integer.BYTES);
+        for (int i = 0; i < stringCount; i++) {
+            int length = map.getInt(position);
+            position += Integer.BYTES;
+            if (length < 0 || position + length > map.capacity()) {
+                throw new IOException(file + ": corrupt string table");
+            }
+            names[i] = NameDictionary.SHARED.intern(map, position, position + length);
+            position += length;
+        }
+
+        LargeDepositor[] depositors = new LargeDepositor[count];
+        position = HEADER_SIZE;
+        for (int i = 0; i < count; i++, position += RECORD_SIZE) {
+            int AFM = map.getInt(position);
+            int firstName = map.getInt(position + 4);
+            int lastName = map.getInt(position + 8);
+            if (firstName < -1 || firstName >= stringCount || lastName < -1 || lastName >= stringCount) {
+                throw new IOException(file + ": record " + i + " has an invalid name code");
+            }
+            if (i > 0 && AFM <= depositors[i - 1].key()) {
+                throw new IOException(file + ": record " + i + " is out of AFM order");
+            }
+            depositors[i] = new LargeDepositor(AFM, nameCode(names, firstName), nameCode(names, lastName),
+                    map.getDouble(position + 12), map.getDouble(position + 20));
+        }
+
+        LargeDepositor[] byLastName = readOrder(file, map, position, depositors, DepositorIndex.BY_LAST_NAME);
+        position += count * Integer.BYTES;
+        LargeDepositor[] bySuspicion = readOrder(file, map, position, depositors, DepositorIndex.BY_SUSPICION);
+        return new Contents(depositors, byLastName, bySuspicion);
+    }
+
+    // NameDictionary code of a string table position, NIL for -1
+    private static int nameCode(int[] names, int position) {
+        return position == -1 ? NameDictionary.NIL : names[position];
+    }
+
+    /**
+     * Reads one index order: record numbers that must list the depositors strictly increasing
+     * under the index order, which also proves that every record appears exactly once.
+     */
+    private static LargeDepositor[] readOrder(Path file, MappedByteBuffer map, int position,
+                                              LargeDepositor[] depositors, Comparator<LargeDepositor> order) throws IOException {
+        LargeDepositor[] sorted = new LargeDepositor[depositors.length];
+        for (int i = 0; i < sorted.length; i++, position += Integer.BYTES) {
+            int record = map.getInt(position);
+            if (record < 0 || record >= depositors.length) {
+                throw new IOException(file + ": index order refers to missing record " + record);
+            }
+            sorted[i] = depositors[record];
+            if (i > 0 && order.compare(sorted[i - 1], sorted[i]) >= 0) {
+                throw new IOException(file + ": index order is not sorted at position " + i);
+            }
+        }
+        return sorted;
+    }
+}
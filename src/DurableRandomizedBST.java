@@ -0,0 +1,217 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * RandomizedBST whose changes survive a restart: a snapshot file holds the state as of the
+ * last compaction, and a write-ahead log (DepositorLog) records every insert, updateSavings
+ * and remove made since then. open() rebuilds the tree from the snapshot and replays the log.
+ *
+ * Only changes that succeed are logged, and a change is logged before it is applied, so a
+ * change whose log entry cannot be written is not applied either. With 'waitForDurability' every change returns once its
+ * log entry is fsynced; the log fsyncs in groups, so threads that change the tree at the same
+ * time share their fsyncs. Without it a change returns right away and at most the last
+ * group (see the group commit settings of DepositorLog) can be lost in a crash.
+ *
+ * load() and compact() fold everything into a new snapshot and empty the log.
+ * The methods are synchronized, like the tree they protect.
+ */
+public class DurableRandomizedBST implements TaxEvasionInterface, Closeable {
+
+    private static final String SNAPSHOT_FILE = "depositors.snapshot";
+    private static final String LOG_FILE = "depositors.log";
+
+    private final RandomizedBST tree;
+    private final Path snapshot;
+    private final DepositorLog log;
+    private final boolean waitForDurability;
+
+    private DurableRandomizedBST(RandomizedBST tree, Path snapshot, DepositorLog log, boolean waitForDurability) {
+        this.tree = tree;
+        this.snapshot = snapshot;
+        this.log = log;
+        this.waitForDurability = waitForDurability;
+    }
+
+    /**
+     * Opens the depositors stored in a directory, creating an empty set if there are none:
+     * reads the latest snapshot, replays the log on top of it and continues the log.
+     *
+     * @param directory The directory of the snapshot and the log, created if needed.
+     * @param groupBytes The log group size that triggers a write and fsync.
+     * @param maxDelayMillis The longest time a log entry waits for its group.
+     * @param waitForDurability true if every change should wait until it is on disk.
+     * @return The recovered depositors.
+     * @throws IOException If the snapshot or the log cannot be read or opened.
+     */
+    public static DurableRandomizedBST open(Path directory, int groupBytes, long maxDelayMillis,
+                                            boolean waitForDurability) throws IOException {
+        Files.createDirectories(directory);
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        RandomizedBST tree = Files.exists(snapshot) ? RandomizedBST.openSnapshot(snapshot) : new RandomizedBST();
+
+        // The log may repeat changes that are already in the snapshot (a crash during
+        // compaction), so replay checks the tree first and never prints anything
+        long validLength = DepositorLog.replay(directory.resolve(LOG_FILE), new DepositorLog.Listener() {
+            @Override
+            public void insert(LargeDepositor item) {
+                if (!contains(tree, item.key())) {
+                    tree.insert(item);
+                }
+            }
+
+            @Override
+            public void updateSavings(int AFM, double savings) {
+                tree.updateSavings(AFM, savings);
+            }
+
+            @Override
+            public void remove(int AFM) {
+                if (contains(tree, AFM)) {
+                    tree.remove(AFM);
+                }
+            }
+        });
+
+        DepositorLog log = new DepositorLog(directory.resolve(LOG_FILE), validLength, groupBytes, maxDelayMillis);
+        return new DurableRandomizedBST(tree, snapshot, log, waitForDurability);
+    }
+
+    // Whether the AFM is in the tree, without the message of searchByAFM
+    private static boolean contains(RandomizedBST tree, int AFM) {
+        return tree.searchByAFM(new int[] {AFM})[0] != null;
+    }
+
+    // Wait for the log entry if changes must be durable on return
+    private void commit(long offset) {
+        if (waitForDurability) {
+            try {
+                log.awaitDurable(offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public void insert(LargeDepositor item) {
+        long offset;
+        synchronized (this) {
+            if (contains(tree, item.key())) {
+                tree.insert(item); // Prints the message, nothing to log
+                return;
+            }
+            // Log first: if the entry cannot be built or appended, the tree is left unchanged
+            try {
+                offset = log.appendInsert(item);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            tree.insert(item);
+        }
+        commit(offset);
+    }
+
+    // Load data from file, then fold it into a new snapshot instead of logging every depositor
+    @Override
+    public synchronized void load(String filename) {
+        tree.load(filename);
+        try {
+            compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean updateSavings(int AFM, double savings) {
+        long offset;
+        synchronized (this) {
+            if (!contains(tree, AFM)) {
+                return false;
+            }
+            try {
+                offset = log.appendUpdate(AFM, savings);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            tree.updateSavings(AFM, savings);
+        }
+        commit(offset);
+        return true;
+    }
+
+    @Override
+    public synchronized LargeDepositor searchByAFM(int AFM) {
+        return tree.searchByAFM(AFM);
+    }
+
+    @Override
+    public synchronized StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name) {
+        return tree.searchByLastName(last_name);
+    }
+
+    @Override
+    public void remove(int AFM) {
+        long offset;
+        synchronized (this) {
+            if (!contains(tree, AFM)) {
+                tree.remove(AFM); // Prints the message, nothing to log
+                return;
+            }
+            try {
+                offset = log.appendRemove(AFM);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            tree.remove(AFM);
+        }
+        commit(offset);
+    }
+
+    @Override
+    public synchronized double getMeanSavings() {
+        return tree.getMeanSavings();
+    }
+
+    // Number of depositors
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    @Override
+    public synchronized void printTopLargeDepositors(int k) {
+        tree.printTopLargeDepositors(k);
+    }
+
+    @Override
+    public synchronized void printByAFM() {
+        tree.printByAFM();
+    }
+
+    // Wait until every change made so far is on disk
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+    /**
+     * Writes the current depositors to a new snapshot and empties the log. The snapshot
+     * replaces the old one atomically, so a crash at any point leaves a snapshot and a log
+     * that together give the current state.
+     *
+     * @throws IOException If the snapshot cannot be written or the log cannot be emptied.
+     */
+    public synchronized void compact() throws IOException {
+        log.sync();
+        tree.saveSnapshot(snapshot);
+        log.truncate();
+    }
+
+    // Write out the log and close it, the object cannot be changed afterwards
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+}
@@ -1,15 +1,25 @@
 public class LargeDepositor implements Comparable<LargeDepositor> {
     public int AFM;
-    public String firstName;
-    public String lastName;
+    // The names are codes in NameDictionary.SHARED, so equal names share one copy. They replace
+    // the former public String fields firstName and lastName; use getFirstName()/setFirstName()
+    // and getLastName()/setLastName(). The dictionary is global to the process and never shrinks,
+    // so every name ever set stays in memory.
+    int firstNameCode;
+    int lastNameCode;
     public double savings;
     public double taxedIncome;
 
     // Constructor method
     public LargeDepositor(int AFM, String firstName, String lastName, double savings, double taxedIncome) {
+        this(AFM, NameDictionary.SHARED.intern(firstName), NameDictionary.SHARED.intern(lastName),
+                savings, taxedIncome);
+    }
+
+    // Constructor for names that are already interned, e.g. by the file parser or for a copy
+    LargeDepositor(int AFM, int firstNameCode, int lastNameCode, double savings, double taxedIncome) {
         this.AFM = AFM;
-        this.firstName = firstName;
-        this.lastName = lastName;
+        this.firstNameCode = firstNameCode;
+        this.lastNameCode = lastNameCode;
         this.savings = savings;
         this.taxedIncome = taxedIncome;
     }
@@ -24,19 +34,33 @@ public class LargeDepositor implements Comparable<LargeDepositor> {
     }
 
     public String getFirstName() {
-        return firstName;
+        return NameDictionary.SHARED.name(firstNameCode);
     }
 
     public void setFirstName(String firstName) {
-        this.firstName = firstName;
+        this.firstNameCode = NameDictionary.SHARED.intern(firstName);
     }
 
     public String getLastName() {
-        return lastName;
+        return NameDictionary.SHARED.name(lastNameCode);
     }
 
     public void setLastName(String lastName) {
-        this.lastName = lastName;
+        this.lastNameCode = NameDictionary.SHARED.intern(lastName);
+    }
+
+    // Equal codes mean equal names, so name equality needs no String comparison
+    int getFirstNameCode() {
+        return firstNameCode;
+    }
+
+    int getLastNameCode() {
+        return lastNameCode;
+    }
+
+    // A depositor with the same values, sharing the interned names
+    LargeDepositor copy() {
+        return new LargeDepositor(AFM, firstNameCode, lastNameCode, savings, taxedIncome);
     }
 
     public double getSavings() {
@@ -55,6 +79,15 @@ public class LargeDepositor implements Comparable<LargeDepositor> {
         this.taxedIncome = taxedIncome;
     }
 
+    /*
+     * Suspicion score used to rank depositors
+     * Depositors with taxedIncome < 8000 get the highest possible score,
+     * everyone else is ranked by savings - taxedIncome
+     */
+    public double suspicionScore() {
+        return taxedIncome < 8000 ? Double.MAX_VALUE : savings - taxedIncome;
+    }
+
     @Override
     public int compareTo(LargeDepositor other) {
         /*
@@ -62,15 +95,11 @@ public class LargeDepositor implements Comparable<LargeDepositor> {
          * Returns NUM > 0 if current depositor more suspicious
          * Returns NUM = 0 if depositors are identical
          */
-        if (this.taxedIncome < 8000) {
-            return Double.compare(Double.MAX_VALUE, other.taxedIncome < 8000 ? Double.MAX_VALUE : other.savings - other.taxedIncome);
-        } else {
-            return Double.compare(this.savings - this.taxedIncome, other.taxedIncome < 8000 ? Double.MAX_VALUE : other.savings - other.taxedIncome);
-        }
+        return Double.compare(this.suspicionScore(), other.suspicionScore());
     }
 
     @Override
     public String toString() {
-        return "AFM: " + AFM + ", Name: " + firstName + " " + lastName + ", Savings: " + savings + ", Taxed Income: " + taxedIncome;
+        return "AFM: " + AFM + ", Name: " + getFirstName() + " " + getLastName() + ", Savings: " + savings + ", Taxed Income: " + taxedIncome;
     }
 }
@@ -0,0 +1,414 @@
+import java.util.Arrays;
+
+/**
+ * Last name index of a tree: a compressed trie (radix tree) over the last names, where every
+ * node that ends a name holds the depositors with that name in AFM order.
+ *
+ * A name is stored once however many depositors share it, and names that share a prefix share
+ * the nodes of the prefix, so the index holds no Strings and only one reference per depositor
+ * (instead of a node per depositor, as in a DepositorIndex). Children are sorted by their first
+ * character, so a depth-first walk visits the depositors in (lastName, AFM) order, the order
+ * of DepositorIndex.BY_LAST_NAME.
+ *
+ * The node of every name is also found directly from the name's code in NameDictionary.SHARED,
+ * so an exact search, and an insert or remove that does not create or empty a name, compare
+ * codes instead of walking the characters.
+ *
+ * Depositors with a null last name (code NIL) are kept apart, in a node of their own that is
+ * not in the trie. They come first in toArray(), as in DepositorIndex.BY_LAST_NAME, and no
+ * search matches them.
+ *
+ * Besides the exact lookup it answers prefix searches and bounded edit distance (Levenshtein)
+ * searches. Every search stops as soon as it has 'limit' depositors.
+ */
+class LastNameTrie {
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final LargeDepositor[] NO_DEPOSITORS = new LargeDepositor[0];
+
+    private static final class Node {
+        private char[] label; // Characters of the edge from the parent, empty for the root
+        private Node[] children = NO_CHILDREN; // Sorted by the first character of their labels
+        private LargeDepositor[] depositors = NO_DEPOSITORS; // Depositors with the name that ends here, by AFM
+        private int count; // Number of depositors used in 'depositors'
+
+        Node(char[] label) {
+            this.label = label;
+        }
+    }
+
+    private Node root = new Node(new char[0]);
+    private Node nil = new Node(new char[0]); // Depositors with a null last name, by AFM
+    private Node[] byCode = new Node[0]; // Node of every last name code that has depositors, or null
+    private int size; // Number of depositors in the index
+
+    // Number of depositors in the index
+    int size() {
+        return size;
+    }
+
+    // Add a depositor; the trie grows by at most two nodes
+    void insert(LargeDepositor item) {
+        int code = item.getLastNameCode();
+        if (code == NameDictionary.NIL) {
+            addDepositor(nil, item);
+            return;
+        }
+        Node node = node(code);
+        if (node == null) {
+            node = addName(item.getLastName());
+            if (code >= byCode.length) {
+                byCode = Arrays.copyOf(byCode, Math.max(code + 1, 2 * byCode.length));
+            }
+            byCode[code] = node;
+        }
+        addDepositor(node, item);
+    }
+
+    // The node that ends the name of a code, or null if no depositor has that name (or for NIL)
+    private Node node(int code) {
+        return code >= 0 && code < byCode.length ? byCode[code] : null;
+    }
+
+    // Walk down the characters of a name, adding the nodes it needs
+    private Node addName(String name) {
+        Node node = root;
+        int pos = 0;
+        while (pos < name.length()) {
+            int c = childIndex(node, name.charAt(pos));
+            if (c < 0) {
+                char[] label = new char[name.length() - pos];
+                name.getChars(pos, name.length(), label, 0);
+                Node leaf = new Node(label);
+                insertChild(node, -c - 1, leaf);
+                node = leaf;
+                break;
+            }
+
+            Node child = node.children[c];
+            int common = commonPrefix(child.label, name, pos);
+            if (common < child.label.length) {
+                // The name leaves the edge in the middle: split the edge at that point
+                Node middle = new Node(Arrays.copyOf(child.label, common));
+                child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+                middle.children = new Node[] {child};
+                node.children[c] = middle;
+                child = middle;
+            }
+            node = child;
+            pos += common;
+        }
+        return node;
+    }
+
+    // Add many depositors, in any order
+    void bulkLoad(LargeDepositor[] items, int count) {
+        for (int i = 0; i < count; i++) {
+            insert(items[i]);
+        }
+    }
+
+    /**
+     * Replaces the contents of the index with depositors in (lastName, AFM) order, e.g. read
+     * back from a snapshot. Every depositor is appended to the end of its name's array.
+     *
+     * @param sorted The depositors, strictly increasing under DepositorIndex.BY_LAST_NAME.
+     */
+    void loadSorted(LargeDepositor[] sorted) {
+        root = new Node(new char[0]);
+        nil = new Node(new char[0]);
+        byCode = new Node[0];
+        size = 0;
+        bulkLoad(sorted, sorted.length);
+    }
+
+    /**
+     * Removes a depositor. Nodes that are left without depositors and children are removed,
+     * and a node left with no depositors and one child is merged with it, so the trie stays
+     * compressed.
+     *
+     * @param item The depositor, found by its last name and AFM.
+     * @return true if it was in the index.
+     */
+    boolean remove(LargeDepositor item) {
+        Node node = item.getLastNameCode() == NameDictionary.NIL ? nil : node(item.getLastNameCode());
+        if (node == null) {
+            return false;
+        }
+        int i = findDepositor(node, item.key());
+        if (i < 0) {
+            return false;
+        }
+        if (node.count > 1 || node == nil) {
+            // The name keeps depositors (or is the null name), the trie does not change shape
+            System.arraycopy(node.depositors, i + 1, node.depositors, i, node.count - i - 1);
+            node.depositors[--node.count] = null;
+            size--;
+            return true;
+        }
+
+        // The last depositor of the name: walk down for the path, to prune the trie
+        byCode[item.getLastNameCode()] = null;
+        node.depositors = NO_DEPOSITORS;
+        node.count = 0;
+        size--;
+        String name = item.getLastName();
+        Node[] path = new Node[name.length() + 1]; // At most one node per character, plus the root
+        int[] childIndexes = new int[name.length() + 1];
+        int depth = 0;
+        node = root;
+        int pos = 0;
+        while (pos < name.length()) {
+            int c = childIndex(node, name.charAt(pos));
+            path[depth] = node;
+            childIndexes[depth++] = c;
+            node = node.children[c];
+            pos += node.label.length;
+        }
+
+        // Remove the node if it is now empty, then merge what is left with a single child
+        if (depth > 0 && node.children.length == 0) {
+            node = path[--depth];
+            removeChild(node, childIndexes[depth]);
+        }
+        if (depth > 0 && node.count == 0 && node.children.length == 1) {
+            Node child = node.children[0];
+            char[] label = Arrays.copyOf(node.label, node.label.length + child.label.length);
+            System.arraycopy(child.label, 0, label, node.label.length, child.label.length);
+            child.label = label;
+            path[depth - 1].children[childIndexes[depth - 1]] = child;
+        }
+        return true;
+    }
+
+    // The depositors in (lastName, AFM) order
+    LargeDepositor[] toArray() {
+        LargeDepositor[] items = new LargeDepositor[size];
+        flatten(root, items, flatten(nil, items, 0));
+        return items;
+    }
+
+    private static int flatten(Node node, LargeDepositor[] out, int pos) {
+        System.arraycopy(node.depositors, 0, out, pos, node.count);
+        pos += node.count;
+        for (Node child : node.children) {
+            pos = flatten(child, out, pos);
+        }
+        return pos;
+    }
+
+    /**
+     * Appends the depositors with exactly the given last name to result, in AFM order.
+     *
+     * @param code The code of the last name in NameDictionary.SHARED, NIL for a name that
+     *             was never interned.
+     * @param limit The maximum number of depositors to add.
+     * @param result The queue that receives the depositors.
+     * @return The number of depositors added.
+     */
+    int collectExact(int code, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        Node node = node(code);
+        return node == null ? 0 : addDepositors(node, limit, result);
+    }
+
+    /**
+     * Appends the depositors whose last name starts with the given prefix to result, in
+     * (lastName, AFM) order. The walk down costs O(prefix length); after that every node
+     * visited adds at least one depositor, until the limit is reached.
+     *
+     * @param prefix The start of the last name; the empty prefix matches every depositor.
+     * @param limit The maximum number of depositors to add.
+     * @param result The queue that receives the depositors.
+     * @return The number of depositors added.
+     */
+    int collectPrefix(String prefix, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        Node node = root;
+        int pos = 0;
+        while (pos < prefix.length()) {
+            int c = childIndex(node, prefix.charAt(pos));
+            if (c < 0) {
+                return 0;
+            }
+            node = node.children[c];
+            int common = commonPrefix(node.label, prefix, pos);
+            if (pos + common < prefix.length() && common < node.label.length) {
+                return 0; // The prefix leaves the edge in the middle
+            }
+            pos += common;
+        }
+        return collect(node, limit, result);
+    }
+
+    // Add the depositors of a subtree in (lastName, AFM) order, up to limit
+    private static int collect(Node node, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        int added = addDepositors(node, limit, result);
+        for (int c = 0; c < node.children.length && added < limit; c++) {
+            added += collect(node.children[c], limit - added, result);
+        }
+        return added;
+    }
+
+    /**
+     * Appends the depositors whose last name is within maxEdits insertions, deletions or
+     * substitutions of the given name to result: first the exact matches, then the names at
+     * distance 1, and so on, each group in (lastName, AFM) order.
+     *
+     * Every pass carries one row of the edit distance table down the trie, one row per
+     * character, and skips a subtree as soon as every entry of its row exceeds the distance of
+     * the pass, since no name below it can come closer. A shared prefix is computed once for
+     * all the names below it.
+     *
+     * @param name The last name to compare with.
+     * @param maxEdits The largest edit distance accepted, e.g. 1 or 2.
+     * @param limit The maximum number of depositors to add.
+     * @param result The queue that receives the depositors.
+     * @return The number of depositors added.
+     */
+    int collectSimilar(String name, int maxEdits, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        // Row of the empty name: i edits turn it into the first i characters of 'name'
+        int[] first = new int[name.length() + 1];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = i;
+        }
+
+        int added = 0;
+        for (int distance = 0; distance <= maxEdits && added < limit; distance++) {
+            added += collectSimilar(root, first, name, distance, limit - added, result);
+        }
+        return added;
+    }
+
+    /**
+     * Adds the depositors below a node whose names are at exactly 'distance' edits.
+     *
+     * @param node The node.
+     * @param row The edit distances between the name of the node and every prefix of 'name'.
+     * @param name The last name to compare with.
+     * @param distance The edit distance of this pass.
+     * @param limit The maximum number of depositors to add.
+     * @param result The queue that receives the depositors.
+     * @return The number of depositors added.
+     */
+    private static int collectSimilar(Node node, int[] row, String name, int distance, int limit,
+                                      StringDoubleEndedQueue<LargeDepositor> result) {
+        int added = 0;
+        if (row[name.length()] == distance) {
+            added = addDepositors(node, limit, result);
+        }
+
+        for (int c = 0; c < node.children.length && added < limit; c++) {
+            Node child = node.children[c];
+            int[] childRow = row;
+            for (int k = 0; k < child.label.length && childRow != null; k++) {
+                childRow = nextRow(childRow, child.label[k], name, distance);
+            }
+            if (childRow != null) {
+                added += collectSimilar(child, childRow, name, distance, limit - added, result);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * One step of the edit distance table: the row after appending a character to the name of
+     * the previous row.
+     *
+     * @return The new row, or null if all of its entries exceed 'distance'.
+     */
+    private static int[] nextRow(int[] previous, char ch, String name, int distance) {
+        int[] row = new int[previous.length];
+        row[0] = previous[0] + 1;
+        int min = row[0];
+        for (int j = 1; j < row.length; j++) {
+            int substitute = previous[j - 1] + (name.charAt(j - 1) == ch ? 0 : 1);
+            row[j] = Math.min(substitute, Math.min(previous[j], row[j - 1]) + 1);
+            min = Math.min(min, row[j]);
+        }
+        return min > distance ? null : row;
+    }
+
+    private static int addDepositors(Node node, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        int added = Math.min(node.count, limit);
+        for (int i = 0; i < added; i++) {
+            result.addLast(node.depositors[i]);
+        }
+        return added;
+    }
+
+    // Insert the depositor into its node's AFM-ordered array, growing it by about half
+    private void addDepositor(Node node, LargeDepositor item) {
+        int i = findDepositor(node, item.key());
+        if (i >= 0) {
+            node.depositors[i] = item;
+            return;
+        }
+        i = -i - 1;
+        if (node.count == node.depositors.length) {
+            node.depositors = Arrays.copyOf(node.depositors, node.count + (node.count >> 1) + 1);
+        }
+        System.arraycopy(node.depositors, i, node.depositors, i + 1, node.count - i);
+        node.depositors[i] = item;
+        node.count++;
+        size++;
+    }
+
+    // Binary search for an AFM among the depositors of a node, as Arrays.binarySearch
+    private static int findDepositor(Node node, int AFM) {
+        int lo = 0;
+        int hi = node.count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int key = node.depositors[mid].key();
+            if (key < AFM) {
+                lo = mid + 1;
+            } else if (key > AFM) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    // Binary search for the child whose label starts with ch, as Arrays.binarySearch
+    private static int childIndex(Node node, char ch) {
+        int lo = 0;
+        int hi = node.children.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char first = node.children[mid].label[0];
+            if (first < ch) {
+                lo = mid + 1;
+            } else if (first > ch) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    private static void insertChild(Node node, int i, Node child) {
+        Node[] children = new Node[node.children.length + 1];
+        System.arraycopy(node.children, 0, children, 0, i);
+        children[i] = child;
+        System.arraycopy(node.children, i, children, i + 1, node.children.length - i);
+        node.children = children;
+    }
+
+    private static void removeChild(Node node, int i) {
+        Node[] children = node.children.length == 1 ? NO_CHILDREN : new Node[node.children.length - 1];
+        System.arraycopy(node.children, 0, children, 0, i);
+        System.arraycopy(node.children, i + 1, children, i, node.children.length - i - 1);
+        node.children = children;
+    }
+
+    // Length of the common prefix of a label and name[pos..]
+    private static int commonPrefix(char[] label, String name, int pos) {
+        int n = Math.min(label.length, name.length() - pos);
+        int i = 0;
+        while (i < n && label[i] == name.charAt(pos + i)) {
+            i++;
+        }
+        return i;
+    }
+}
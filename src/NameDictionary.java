@@ -0,0 +1,260 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dictionary of the distinct first and last names. Each name is stored once, as UTF-8 bytes in
+ * one growing arena, and is identified by its code, the order in which it was first seen.
+ * Codes are found through an open-addressing hash table over the bytes, so the file parser can
+ * intern a name straight from the mapped file without building a String for it.
+ *
+ * Every name also has one String, decoded when the name is first interned, which name(code)
+ * returns without allocating. Since there are a few thousand distinct names for millions of
+ * depositors, a depositor costs two int codes instead of two Strings.
+ *
+ * Names are never removed, so a dictionary is meant for data with few distinct names. Looking
+ * up a name that is already in the dictionary does not lock: the arrays are published through
+ * a volatile State, and a writer only appends after the published names and publishes a new
+ * State when it is done. Only adding a name is synchronized, so the workers of the file parser
+ * do not contend on the names they have all seen before.
+ */
+class NameDictionary {
+
+    // Code of a null name, and what code() returns for a name that was never interned
+    static final int NIL = -1;
+
+    // The dictionary of the names of every LargeDepositor. It is global to the process and never
+    // shrinks: names stay in it after every depositor that had them is removed or collected.
+    static final NameDictionary SHARED = new NameDictionary();
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The published names. The arrays may hold more than count names while a writer adds one;
+    // readers ignore the codes from count on.
+    private static final class State {
+        final byte[] bytes;
+        final int length; // Bytes in use
+        final int[] offsets; // Name i is bytes offsets[i]..offsets[i+1]
+        final int[] hashes; // Hash of the bytes of every name
+        final int count;
+        final int[] table; // Code + 1, 0 for an empty bucket
+        final String[] strings; // The decoded names, by code
+
+        State(byte[] bytes, int length, int[] offsets, int[] hashes, int count, int[] table, String[] strings) {
+            this.bytes = bytes;
+            this.length = length;
+            this.offsets = offsets;
+            this.hashes = hashes;
+            this.count = count;
+            this.table = table;
+            this.strings = strings;
+        }
+    }
+
+    private volatile State state = new State(new byte[16 * INITIAL_CAPACITY], 0, new int[INITIAL_CAPACITY + 1],
+            new int[INITIAL_CAPACITY], 0, new int[2 * INITIAL_CAPACITY], new String[INITIAL_CAPACITY]);
+
+    /**
+     * Returns the code of a name, adding the name if it is new.
+     *
+     * @param name The name, or null.
+     * @return The code, or NIL for null.
+     */
+    int intern(String name) {
+        if (name == null) {
+            return NIL;
+        }
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(encoded, 0, encoded.length);
+        int code = find(state, encoded, hash);
+        return code >= 0 ? code : add(encoded, hash, name);
+    }
+
+    /**
+     * Returns the code of the UTF-8 name in buffer[from, to), adding the name if it is new.
+     * A name that is already in the dictionary is found without decoding, copying or locking.
+     *
+     * @param buffer The bytes, e.g. a mapped file.
+     * @param from The first byte of the name.
+     * @param to The byte after the name.
+     * @return The code.
+     */
+    int intern(ByteBuffer buffer, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        State s = state;
+        int mask = s.table.length - 1;
+        for (int bucket = spread(hash) & mask; ; bucket = (bucket + 1) & mask) {
+            int code = s.table[bucket] - 1;
+            if (code < 0 || code >= s.count) {
+                // Not published (yet): add it under the lock, which looks again first
+                break;
+            }
+            if (matches(s, code, hash, buffer, from, to)) {
+                return code;
+            }
+        }
+
+        byte[] encoded = new byte[to - from];
+        buffer.get(from, encoded);
+        String name = new String(encoded, StandardCharsets.UTF_8);
+        if (!Arrays.equals(encoded, name.getBytes(StandardCharsets.UTF_8))) {
+            // Malformed UTF-8: key the name by the bytes of its decoded form, so that equal
+            // names always have equal codes
+            return intern(name);
+        }
+        return add(encoded, hash, name);
+    }
+
+    /**
+     * Returns the code of a name without adding it, e.g. to reject a search for a name that no
+     * depositor has before looking at any depositor.
+     *
+     * @param name The name, or null.
+     * @return The code, or NIL if the name was never interned.
+     */
+    int code(String name) {
+        if (name == null) {
+            return NIL;
+        }
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        return find(state, encoded, hash(encoded, 0, encoded.length));
+    }
+
+    // The name of a code, null for NIL; the same String every time
+    String name(int code) {
+        return code == NIL ? null : state.strings[code];
+    }
+
+    // Number of distinct names
+    int size() {
+        return state.count;
+    }
+
+    // Bytes of UTF-8 in the arena
+    long arenaBytes() {
+        return state.length;
+    }
+
+    /**
+     * Estimates the heap used by the dictionary: its arrays, plus a String of about 40 bytes of
+     * headers and the characters of every name.
+     *
+     * @return The estimate in bytes.
+     */
+    long estimatedBytes() {
+        State s = state;
+        long arrays = s.bytes.length + 4L * (s.offsets.length + s.hashes.length + s.table.length + s.strings.length);
+        return arrays + 40L * s.count + s.length;
+    }
+
+    // Add a name that was not found without the lock, unless another thread added it meanwhile
+    private synchronized int add(byte[] encoded, int hash, String name) {
+        State s = state;
+        int mask = s.table.length - 1;
+        int bucket = spread(hash) & mask;
+        while (s.table[bucket] != 0) {
+            int code = s.table[bucket] - 1;
+            if (matches(s, code, hash, encoded)) {
+                return code;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+
+        // Only the slots after the published names are written in place, which readers ignore
+        byte[] bytes = s.bytes;
+        int length = s.length;
+        if (length + encoded.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + encoded.length));
+        }
+        System.arraycopy(encoded, 0, bytes, length, encoded.length);
+        length += encoded.length;
+
+        int count = s.count;
+        int[] offsets = s.offsets;
+        int[] hashes = s.hashes;
+        String[] strings = s.strings;
+        if (count == hashes.length) {
+            offsets = Arrays.copyOf(offsets, 2 * count + 1);
+            hashes = Arrays.copyOf(hashes, 2 * count);
+            strings = Arrays.copyOf(strings, 2 * count);
+        }
+        hashes[count] = hash;
+        strings[count] = name;
+        offsets[++count] = length;
+
+        int[] table = s.table;
+        if (2 * count > table.length) {
+            // Keep the table at most half full
+            table = rehash(hashes, count, 2 * table.length);
+        } else {
+            // A reader that sees the bucket before the new State skips the unpublished code
+            table[bucket] = count;
+        }
+        state = new State(bytes, length, offsets, hashes, count, table, strings);
+        return count - 1;
+    }
+
+    // The code of the name among the published ones, or NIL
+    private static int find(State s, byte[] encoded, int hash) {
+        int mask = s.table.length - 1;
+        for (int bucket = spread(hash) & mask; ; bucket = (bucket + 1) & mask) {
+            int code = s.table[bucket] - 1;
+            if (code < 0 || code >= s.count) {
+                return NIL;
+            }
+            if (matches(s, code, hash, encoded)) {
+                return code;
+            }
+        }
+    }
+
+    private static boolean matches(State s, int code, int hash, byte[] encoded) {
+        return s.hashes[code] == hash
+                && Arrays.equals(s.bytes, s.offsets[code], s.offsets[code + 1], encoded, 0, encoded.length);
+    }
+
+    private static boolean matches(State s, int code, int hash, ByteBuffer buffer, int from, int to) {
+        int offset = s.offsets[code];
+        if (s.hashes[code] != hash || s.offsets[code + 1] - offset != to - from) {
+            return false;
+        }
+        byte[] bytes = s.bytes;
+        for (int i = offset, j = from; j < to; i++, j++) {
+            if (bytes[i] != buffer.get(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // A new table of the given capacity with the first count names
+    private static int[] rehash(int[] hashes, int count, int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int code = 0; code < count; code++) {
+            int bucket = spread(hashes[code]) & mask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = code + 1;
+        }
+        return table;
+    }
+
+    // Same value as Arrays.hashCode over the bytes
+    private static int hash(byte[] encoded, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + encoded[i];
+        }
+        return h;
+    }
+
+    // Mix the high bits into the low ones, which pick the bucket
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
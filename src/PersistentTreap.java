@@ -0,0 +1,288 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Consumer;
+
+/**
+ * Immutable (path-copying) treap of depositors.
+ * Every update returns a new root and leaves the old version untouched, so a reader that
+ * holds a root can keep walking it while writers publish newer versions.
+ * Like RandomizedBST, every node keeps the size and the savings totals of its subtree.
+ * All operations take the Comparator that orders the treap; it must be a total order.
+ */
+final class PersistentTreap {
+
+    static final class Node {
+        final LargeDepositor item;
+        final int priority; // Heap order: a parent's priority is >= its children's
+        final Node left;
+        final Node right;
+
+        final int N; // Number of nodes in the subtree rooted at this Node
+        final double sumSavings; // Sum of savings in the subtree rooted at this Node
+        final double sumTaxedIncome; // Sum of taxed income in the subtree rooted at this Node
+        final double sumSquaredSavings; // Sum of squared savings in the subtree
+
+        Node(LargeDepositor item, int priority, Node left, Node right) {
+            this.item = item;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.N = 1 + size(left) + size(right);
+            this.sumSavings = item.savings + sumSavings(left) + sumSavings(right);
+            this.sumTaxedIncome = item.taxedIncome + sumTaxedIncome(left) + sumTaxedIncome(right);
+            this.sumSquaredSavings = item.savings * item.savings
+                    + sumSquaredSavings(left) + sumSquaredSavings(right);
+        }
+    }
+
+    private PersistentTreap() {
+    }
+
+    static int size(Node x) {
+        return x == null ? 0 : x.N;
+    }
+
+    static double sumSavings(Node x) {
+        return x == null ? 0.0 : x.sumSavings;
+    }
+
+    static double sumTaxedIncome(Node x) {
+        return x == null ? 0.0 : x.sumTaxedIncome;
+    }
+
+    static double sumSquaredSavings(Node x) {
+        return x == null ? 0.0 : x.sumSquaredSavings;
+    }
+
+    /**
+     * Inserts a depositor that is not yet in the treap.
+     *
+     * @param node The root of the current version.
+     * @param item The depositor to insert.
+     * @param priority The random heap priority of the new node.
+     * @param order The order of the treap.
+     * @return The root of the new version.
+     */
+    static Node insert(Node node, LargeDepositor item, int priority, Comparator<LargeDepositor> order) {
+        if (node == null) {
+            return new Node(item, priority, null, null);
+        }
+
+        if (order.compare(item, node.item) < 0) {
+            Node left = insert(node.left, item, priority, order);
+            if (left.priority > node.priority) {
+                // Rotate right: the new node moves above the current one
+                return new Node(left.item, left.priority, left.left,
+                        new Node(node.item, node.priority, left.right, node.right));
+            }
+            return new Node(node.item, node.priority, left, node.right);
+        } else {
+            Node right = insert(node.right, item, priority, order);
+            if (right.priority > node.priority) {
+                // Rotate left: the new node moves above the current one
+                return new Node(right.item, right.priority,
+                        new Node(node.item, node.priority, node.left, right.left), right.right);
+            }
+            return new Node(node.item, node.priority, node.left, right);
+        }
+    }
+
+    /**
+     * Removes the depositor that compares equal to the given one.
+     *
+     * @return The root of the new version, or the same root if there was no such depositor.
+     */
+    static Node remove(Node node, LargeDepositor item, Comparator<LargeDepositor> order) {
+        if (node == null) {
+            return null;
+        }
+
+        int cmp = order.compare(item, node.item);
+        if (cmp < 0) {
+            Node left = remove(node.left, item, order);
+            return left == node.left ? node : new Node(node.item, node.priority, left, node.right);
+        } else if (cmp > 0) {
+            Node right = remove(node.right, item, order);
+            return right == node.right ? node : new Node(node.item, node.priority, node.left, right);
+        } else {
+            return merge(node.left, node.right);
+        }
+    }
+
+    /**
+     * Replaces the depositor that compares equal to the given one with it,
+     * for updates that do not change the position in this treap.
+     *
+     * @return The root of the new version, or the same root if there was no such depositor.
+     */
+    static Node replace(Node node, LargeDepositor item, Comparator<LargeDepositor> order) {
+        if (node == null) {
+            return null;
+        }
+
+        int cmp = order.compare(item, node.item);
+        if (cmp < 0) {
+            Node left = replace(node.left, item, order);
+            return left == node.left ? node : new Node(node.item, node.priority, left, node.right);
+        } else if (cmp > 0) {
+            Node right = replace(node.right, item, order);
+            return right == node.right ? node : new Node(node.item, node.priority, node.left, right);
+        } else {
+            return new Node(item, node.priority, node.left, node.right);
+        }
+    }
+
+    // Join two treaps where every key of a is smaller than every key of b
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+
+        if (a.priority > b.priority) {
+            return new Node(a.item, a.priority, a.left, merge(a.right, b));
+        } else {
+            return new Node(b.item, b.priority, merge(a, b.left), b.right);
+        }
+    }
+
+    // Find a depositor of a treap ordered by AFM
+    static LargeDepositor findByAFM(Node node, int AFM) {
+        while (node != null) {
+            int key = node.item.key();
+            if (AFM == key) {
+                return node.item;
+            }
+            node = AFM < key ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Adds to the result, in treap order, the depositors that come at or after 'from' for
+     * as long as they compare equal to 'from' under 'prefix', stopping after 'limit' results.
+     * Same walk as DepositorIndex.collect.
+     *
+     * @return The number of depositors added.
+     */
+    static int collect(Node node, LargeDepositor from, Comparator<LargeDepositor> order,
+                       Comparator<LargeDepositor> prefix, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        Node[] stack = new Node[32];
+        int depth = 0;
+
+        while (node != null) {
+            if (order.compare(node.item, from) >= 0) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+
+        int added = 0;
+        while (depth > 0 && added < limit) {
+            node = stack[--depth];
+            if (prefix.compare(node.item, from) != 0) {
+                break;
+            }
+            result.addLast(node.item);
+            added++;
+
+            node = node.right;
+            while (node != null) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = node.left;
+            }
+        }
+
+        return added;
+    }
+
+    /**
+     * Adds the 'limit' largest depositors to the result, largest first.
+     *
+     * @return The number of depositors added.
+     */
+    static int collectDescending(Node node, int limit, StringDoubleEndedQueue<LargeDepositor> result) {
+        Node[] stack = new Node[32];
+        int depth = 0;
+        int added = 0;
+
+        while ((node != null || depth > 0) && added < limit) {
+            // Go down the rightmost path first
+            while (node != null) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = node.right;
+            }
+            node = stack[--depth];
+            result.addLast(node.item);
+            added++;
+            node = node.left;
+        }
+
+        return added;
+    }
+
+    /**
+     * Passes every depositor of a version to the action in ascending order, with an explicit
+     * stack instead of recursion.
+     *
+     * @param node The root of the version.
+     * @param action The action to perform on each depositor.
+     */
+    static void forEach(Node node, Consumer<LargeDepositor> action) {
+        Node[] stack = new Node[32];
+        int depth = 0;
+
+        while (node != null || depth > 0) {
+            // Go down the leftmost path first
+            while (node != null) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = node.left;
+            }
+            node = stack[--depth];
+            action.accept(node.item);
+            node = node.right;
+        }
+    }
+
+    /**
+     * Checks the treap invariants of a version: the order, the heap property of the
+     * priorities and the stored sizes.
+     *
+     * @throws IllegalStateException If an invariant does not hold.
+     */
+    static void check(Node node, Comparator<LargeDepositor> order) {
+        check(node, null, null, order);
+    }
+
+    // Every item of the subtree must lie strictly between low and high (null = unbounded)
+    private static void check(Node node, LargeDepositor low, LargeDepositor high, Comparator<LargeDepositor> order) {
+        if (node == null) {
+            return;
+        }
+        if ((low != null && order.compare(node.item, low) <= 0)
+                || (high != null && order.compare(node.item, high) >= 0)) {
+            throw new IllegalStateException("Order violated at " + node.item);
+        }
+        if ((node.left != null && node.left.priority > node.priority)
+                || (node.right != null && node.right.priority > node.priority)) {
+            throw new IllegalStateException("Heap order violated at " + node.item);
+        }
+        if (node.N != 1 + size(node.left) + size(node.right)) {
+            throw new IllegalStateException("Wrong size at " + node.item);
+        }
+        check(node.left, low, node.item, order);
+        check(node.right, node.item, high, order);
+    }
+}
@@ -1,8 +1,37 @@
-import java.io.FileReader;
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Randomized BST of the depositors by AFM, with a last name index and a suspicion index.
+ *
+ * The depositors returned by the searches, select, the iterators and the streams are the
+ * objects stored in the tree, not copies, and must be treated as read-only: their savings
+ * and taxed income feed the subtree totals and the suspicion index, so a change made through
+ * the returned object corrupts both. Change savings through updateSavings.
+ */
 class RandomizedBST implements TaxEvasionInterface {
     private class TreeNode {
         private LargeDepositor item;
@@ -10,26 +39,313 @@ class RandomizedBST implements TaxEvasionInterface {
         private TreeNode right; // Pointer to right subtree
 
         int N; // Number of nodes in the subtree rooted at this TreeNode
+        double sumSavings; // Sum of savings in the subtree rooted at this TreeNode
+        double sumTaxedIncome; // Sum of taxed income in the subtree rooted at this TreeNode
+        double sumSquaredSavings; // Sum of squared savings, used for the variance
     
         // TreeNode constructor accepting data
         public TreeNode(LargeDepositor item) {
             this.item = item;
             this.N = 1;
+            this.sumSavings = item.savings;
+            this.sumTaxedIncome = item.taxedIncome;
+            this.sumSquaredSavings = item.savings * item.savings;
+        }
+    }
+
+    // Running totals of a set of depositors, used by the range queries
+    private static class Aggregate {
+        int count;
+        double sumSavings;
+        double sumTaxedIncome;
+        double sumSquaredSavings;
+
+        // Add a single depositor
+        void add(LargeDepositor item) {
+            count++;
+            sumSavings += item.savings;
+            sumTaxedIncome += item.taxedIncome;
+            sumSquaredSavings += item.savings * item.savings;
+        }
+
+        // Add a whole subtree in O(1) using its stored totals
+        void add(TreeNode node) {
+            if (node != null) {
+                count += node.N;
+                sumSavings += node.sumSavings;
+                sumTaxedIncome += node.sumTaxedIncome;
+                sumSquaredSavings += node.sumSquaredSavings;
+            }
         }
     }
     
+    // Maximum number of depositors printed by a last name search
+    public static final int MAX_LAST_NAME_RESULTS = 5;
+
+    // Order of the AFM views, for Spliterator.getComparator
+    private static final Comparator<LargeDepositor> AFM_ORDER = Comparator.comparingInt(LargeDepositor::key);
+    // Size of the output buffer of the print methods
+    private static final int PRINT_BUFFER_SIZE = 1 << 16;
+
     private TreeNode root; // Root of the BST
-    private StringDoubleEndedQueue<LargeDepositor> topDepositorsQueue;
+    private LastNameTrie lastNameIndex; // Secondary index ordered by (lastName, AFM), with prefix and fuzzy search
+    private DepositorIndex suspicionIndex; // Secondary index ordered by (suspicion, AFM)
+    private final RandomGenerator random; // Source of the random choices, null for ThreadLocalRandom
+    private boolean iterative = true; // Use the iterative lookup, insert, remove and traversal
+    private IntConsumer missListener; // Told about every batch lookup miss, may be null
+    private long misses = 0; // Batch lookup misses so far
+    private TreeMetrics metrics; // Operation and shape counters, null unless enabled
 
-    // Initialize the tree
+    // Initialize the tree, random choices come from the ThreadLocalRandom of the calling thread
     public RandomizedBST() {
-        topDepositorsQueue = new StringDoubleEndedQueueImpl<>();
+        this((RandomGenerator) null);
+    }
+
+    // Initialize the tree with a seeded generator, so that the tree shapes can be reproduced
+    public RandomizedBST(long seed) {
+        this(new SplittableRandom(seed));
+    }
+
+    /**
+     * Initialize the tree with the given source of randomness.
+     * The generator is only used by the thread that changes the tree, so it does not have to be
+     * thread-safe. A splittable generator is split for the suspicion index, so that it gets its
+     * own independent, reproducible stream (the last name trie makes no random choices).
+     *
+     * @param random The generator, or null to use ThreadLocalRandom.current().
+     */
+    public RandomizedBST(RandomGenerator random) {
+        this.random = random;
+        lastNameIndex = new LastNameTrie();
+        suspicionIndex = new DepositorIndex(DepositorIndex.BY_SUSPICION, split(random));
+    }
+
+    private static RandomGenerator split(RandomGenerator random) {
+        if (random instanceof RandomGenerator.SplittableGenerator) {
+            return ((RandomGenerator.SplittableGenerator) random).split();
+        }
+        return random;
+    }
+
+    // Uniform random int in [0, bound), one draw per call
+    private int randomInt(int bound) {
+        return randomInt(random, bound);
+    }
+
+    private static int randomInt(RandomGenerator generator, int bound) {
+        return generator == null ? ThreadLocalRandom.current().nextInt(bound) : generator.nextInt(bound);
+    }
+
+    /**
+     * Selects the implementation of searchByAFM, insert, remove and the in-order traversal.
+     * The iterative versions (the default) use an explicit stack or parent tracking, so an
+     * unusually deep tree cannot overflow the thread stack. The recursive versions are kept
+     * for comparison, see RecursionBenchmark in the benchmarks module. Both build exactly the same trees.
+     *
+     * @param iterative true for the iterative versions, false for the recursive ones.
+     */
+    public void setIterative(boolean iterative) {
+        this.iterative = iterative;
+    }
+
+    // Push a node on an explicit stack, growing it when full
+    private static TreeNode[] push(TreeNode[] stack, int depth, TreeNode node) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth] = node;
+        return stack;
     }
 
     // Insert new node to the tree
     @Override
     public void insert(LargeDepositor item) {
-        root = insertAsRoot(item, root);
+        long start = metrics == null ? 0 : System.nanoTime();
+        // A duplicate would be counted twice on the way down, so reject it first
+        if (find(item.key()) != null) {
+            System.out.println("Depositor with AFM " + item.key() + " already exists.");
+            if (metrics != null) {
+                record(TreeMetrics.INSERT, start, false);
+            }
+            return;
+        }
+        // Indexes first: if one of them fails, the tree and the indexes are left as they were
+        lastNameIndex.insert(item);
+        try {
+            suspicionIndex.insert(item);
+        } catch (RuntimeException e) {
+            lastNameIndex.remove(item);
+            throw e;
+        }
+        root = iterative ? insertIterative(item, root) : insertAsRoot(item, root);
+        if (metrics != null) {
+            record(TreeMetrics.INSERT, start, true);
+        }
+    }
+
+    /**
+     * Starts collecting metrics: per operation counts, misses and latencies, rotations, join
+     * steps, root insertions and sampled node depths (see TreeMetrics). Until this is called
+     * the tree only pays for a null check per operation.
+     *
+     * @param depthSampleRate Measure the depth of a random node on one operation in this many.
+     * @return The metrics, e.g. to register them with JMX or to dump them as text.
+     */
+    public TreeMetrics enableMetrics(int depthSampleRate) {
+        metrics = new TreeMetrics(this::size, depthSampleRate);
+        return metrics;
+    }
+
+    // Stop collecting metrics
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    // The metrics being collected, or null if they are disabled
+    public TreeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records one call of an operation in the metrics, which must be enabled, and on a sample
+     * of the calls the depth of the node at a uniformly random position.
+     *
+     * @param operation The operation, e.g. TreeMetrics.INSERT.
+     * @param start The System.nanoTime() at the start of the call.
+     * @param hit false if the depositor was missing (or, for insert, already there).
+     */
+    private void record(int operation, long start, boolean hit) {
+        metrics.record(operation, start);
+        if (!hit) {
+            metrics.miss(operation);
+        }
+        int n = size(root);
+        if (n == 0 || !metrics.sampleDepth()) {
+            return;
+        }
+
+        // Walk to the random position through the subtree sizes; the tree's own generator
+        // is not used, so that the tree shapes stay reproducible
+        int i = ThreadLocalRandom.current().nextInt(n);
+        int depth = 0;
+        TreeNode node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (i < leftSize) {
+                node = node.left;
+            } else if (i > leftSize) {
+                i -= leftSize + 1;
+                node = node.right;
+            } else {
+                break;
+            }
+            depth++;
+        }
+        metrics.recordDepth(depth);
+    }
+
+    /**
+     * Iterative version of insertAsRoot: walks down with the same random choices, and where
+     * the new item has to become the root of a subtree, splits that subtree around the new key
+     * instead of rotating it up recursively. The split gives exactly the tree the rotations give.
+     *
+     * @param item The LargeDepositor item to be inserted, its AFM not yet in the tree.
+     * @param top The root of the tree.
+     * @return The new root of the tree.
+     */
+    private TreeNode insertIterative(LargeDepositor item, TreeNode top) {
+        TreeNode parent = null;
+        TreeNode node = top;
+
+        while (node != null) {
+            node.N++;
+            node.sumSavings += item.savings;
+            node.sumTaxedIncome += item.taxedIncome;
+            node.sumSquaredSavings += item.savings * item.savings;
+
+            if (randomInt(node.N + 1) == 0) {
+                break;
+            }
+            parent = node;
+            node = item.key() < node.item.key() ? node.left : node.right;
+        }
+
+        if (node != null && metrics != null) {
+            metrics.rootInsertions.increment();
+        }
+        TreeNode inserted = node == null ? new TreeNode(item) : splitAround(item, node);
+        if (parent == null) {
+            return inserted;
+        }
+        if (item.key() < parent.item.key()) {
+            parent.left = inserted;
+        } else {
+            parent.right = inserted;
+        }
+        return top;
+    }
+
+    /**
+     * Makes a new node with the given item the root of a subtree: the subtree is split into
+     * the keys smaller and larger than the item, which become its left and right subtrees.
+     *
+     * @param item The LargeDepositor item of the new root.
+     * @param node The root of the subtree, already counting the new item in its totals.
+     * @return The new root of the subtree.
+     */
+    private TreeNode splitAround(LargeDepositor item, TreeNode node) {
+        TreeNode inserted = new TreeNode(item);
+        copyTotals(node, inserted);
+
+        TreeNode[] path = new TreeNode[32];
+        int depth = 0;
+        TreeNode lessTail = null; // Rightmost node of the smaller part so far
+        TreeNode greaterTail = null; // Leftmost node of the larger part so far
+        TreeNode less = null;
+        TreeNode greater = null;
+
+        while (node != null) {
+            path = push(path, depth++, node);
+            if (node.item.key() < item.key()) {
+                // The node and its left subtree are smaller, continue with its right subtree
+                if (lessTail == null) {
+                    less = node;
+                } else {
+                    lessTail.right = node;
+                }
+                lessTail = node;
+                node = node.right;
+            } else {
+                // The node and its right subtree are larger, continue with its left subtree
+                if (greaterTail == null) {
+                    greater = node;
+                } else {
+                    greaterTail.left = node;
+                }
+                greaterTail = node;
+                node = node.left;
+            }
+        }
+        if (lessTail != null) {
+            lessTail.right = null;
+        }
+        if (greaterTail != null) {
+            greaterTail.left = null;
+        }
+
+        // Rotating the item up from the bottom of the path takes one rotation per node on it
+        if (metrics != null) {
+            metrics.rotations.add(depth);
+        }
+
+        // Every node on the path only changed a child that was visited after it
+        while (depth > 0) {
+            update(path[--depth]);
+        }
+
+        inserted.left = less;
+        inserted.right = greater;
+        return inserted;
     }
 
 
@@ -46,12 +362,19 @@ class RandomizedBST implements TaxEvasionInterface {
             return new TreeNode(item);
         }
 
+        // The new item ends up somewhere in this subtree, so add it to the totals
         node.N++;
+        node.sumSavings += item.savings;
+        node.sumTaxedIncome += item.taxedIncome;
+        node.sumSquaredSavings += item.savings * item.savings;
 
         // Generate a random number between 0 and the size of the current subtree plus 1
         // This determines whether the new item will become the root or be inserted further down
-        if (Math.random() * (node.N + 1) < 1.0) {
+        if (randomInt(node.N + 1) == 0) {
             // If the random number falls within the size of the subtree, insert the new item as the root
+            if (metrics != null) {
+                metrics.rootInsertions.increment();
+            }
             return insertAtRoot(item, node);
         } else if (item.key() < node.item.key()) {
             // If the item's key is less than the current node's key, recursively insert it into the left subtree
@@ -101,21 +424,27 @@ class RandomizedBST implements TaxEvasionInterface {
 
     // Left rotation of a node
     private TreeNode rotateLeft(TreeNode node) {
+        if (metrics != null) {
+            metrics.rotations.increment();
+        }
         TreeNode x = node.right;
         node.right = x.left;
         x.left = node;
-        x.N = node.N;
-        node.N = 1 + size(node.left) + size(node.right);
+        copyTotals(node, x);
+        update(node);
         return x;
     }
 
     // Right rotation of a node
     private TreeNode rotateRight(TreeNode node) {
+        if (metrics != null) {
+            metrics.rotations.increment();
+        }
         TreeNode x = node.left; 
         node.left = x.right;
         x.right = node;
-        x.N = node.N;
-        node.N = 1 + size(node.left) + size(node.right);
+        copyTotals(node, x);
+        update(node);
         return x;
     }
 
@@ -127,72 +456,329 @@ class RandomizedBST implements TaxEvasionInterface {
         return x.N;
     }
 
-    // Load data from file to the tree
+    private double sumSavings(TreeNode x) {
+        return x == null ? 0.0 : x.sumSavings;
+    }
+
+    private double sumTaxedIncome(TreeNode x) {
+        return x == null ? 0.0 : x.sumTaxedIncome;
+    }
+
+    private double sumSquaredSavings(TreeNode x) {
+        return x == null ? 0.0 : x.sumSquaredSavings;
+    }
+
+    // Recompute the size and the totals of a node from its children
+    private void update(TreeNode node) {
+        LargeDepositor item = node.item;
+        node.N = 1 + size(node.left) + size(node.right);
+        node.sumSavings = item.savings + sumSavings(node.left) + sumSavings(node.right);
+        node.sumTaxedIncome = item.taxedIncome + sumTaxedIncome(node.left) + sumTaxedIncome(node.right);
+        node.sumSquaredSavings = item.savings * item.savings
+                + sumSquaredSavings(node.left) + sumSquaredSavings(node.right);
+    }
+
+    // After a rotation the new subtree root covers exactly the nodes the old one did
+    private void copyTotals(TreeNode from, TreeNode to) {
+        to.N = from.N;
+        to.sumSavings = from.sumSavings;
+        to.sumTaxedIncome = from.sumTaxedIncome;
+        to.sumSquaredSavings = from.sumSquaredSavings;
+    }
+
+    // Load data from file to the tree, in one bulk build instead of one insert per line
+    // Malformed lines are reported with their line number and skipped
     @Override
     public void load(String filename) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filename))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("\\s+");
-                int AFM = Integer.parseInt(parts[0]);
-                String firstName = parts[1];
-                String lastName = parts[2];
-                double savings = Double.parseDouble(parts[3]);
-                double taxedIncome = Double.parseDouble(parts[4]);
-                LargeDepositor depositor = new LargeDepositor(AFM, firstName, lastName, savings, taxedIncome);
-                insert(depositor);
-            }
+        DepositorFileParser.Result parsed;
+        try {
+            parsed = new DepositorFileParser().parse(Paths.get(filename));
         } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+
+        for (DepositorFileParser.ParseError error : parsed.errors) {
+            System.out.println("Skipped malformed line in " + filename + ": " + error);
         }
+        bulkLoad(parsed.depositors);
     }
 
-    // Update savings of an existing depositor
-    @Override
-    public void updateSavings(int AFM, double savings) {
-        root = updateSavings(AFM, savings, root);
+    /**
+     * Saves the depositors to a binary snapshot file (see DepositorSnapshot), in AFM order
+     * together with the order of each secondary index.
+     *
+     * @param file The snapshot file, replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        LargeDepositor[] items = new LargeDepositor[size(root)];
+        flatten(root, items, 0);
+        DepositorSnapshot.write(file, new DepositorSnapshot.Contents(
+                items, lastNameIndex.toArray(), suspicionIndex.toArray()));
     }
 
     /**
-     * Updates the savings of a depositor with the specified AFM, if found in the binary search tree.
-     * If the depositor is not found, prints a message indicating the absence of the depositor with the given AFM.
-     * 
-     * @param AFM The AFM of the depositor whose savings are to be updated.
-     * @param savings The new savings amount to be updated for the depositor.
-     * @param node The current TreeNode being considered for updating savings.
-     * @return The updated TreeNode after updating the savings, or null if the depositor with the specified AFM is not found.
+     * Opens a snapshot saved by saveSnapshot. The file is memory-mapped and, since it holds the
+     * depositors already sorted for the tree and for both secondary indexes, all three are
+     * built in linear time without sorting.
+     *
+     * @param file The snapshot file.
+     * @return A new tree with the depositors of the snapshot.
+     * @throws IOException If the file cannot be read or fails its version or checksum check.
+     */
+    public static RandomizedBST openSnapshot(Path file) throws IOException {
+        DepositorSnapshot.Contents contents = DepositorSnapshot.read(file);
+        RandomizedBST tree = new RandomizedBST();
+        tree.root = tree.build(contents.byAFM, 0, contents.byAFM.length - 1);
+        tree.lastNameIndex.loadSorted(contents.byLastName);
+        tree.suspicionIndex.loadSorted(contents.bySuspicion);
+        return tree;
+    }
+
+    /**
+     * Adds many depositors at once.
+     * The depositors are sorted by AFM and, if the tree is empty, the tree is built bottom-up
+     * from the sorted array in linear time. If the tree already has depositors, the existing
+     * ones are read out in order, merged with the new ones and the tree is rebuilt (merge mode).
+     * Either way the cost is O(n + m log m) for n existing and m new depositors,
+     * instead of m randomized inserts with rotations.
+     * As with insert, an AFM that is already present (in the tree or earlier in the input)
+     * is reported and skipped.
+     *
+     * @param depositors The depositors to add, in any order.
+     */
+    public void bulkLoad(List<LargeDepositor> depositors) {
+        LargeDepositor[] incoming = depositors.toArray(new LargeDepositor[0]);
+        // Stable sort: among duplicates of the input, the first one in file order is kept
+        Arrays.sort(incoming, Comparator.comparingInt(LargeDepositor::key));
+
+        LargeDepositor[] existing = new LargeDepositor[size(root)];
+        flatten(root, existing, 0);
+
+        LargeDepositor[] merged = new LargeDepositor[existing.length + incoming.length];
+        LargeDepositor[] added = new LargeDepositor[incoming.length];
+        int i = 0, j = 0, count = 0, addedCount = 0;
+
+        // Merge the two sorted arrays; the depositor already in the tree wins a tie
+        while (j < incoming.length) {
+            if (i < existing.length && existing[i].key() <= incoming[j].key()) {
+                merged[count++] = existing[i++];
+            } else if (count > 0 && merged[count - 1].key() == incoming[j].key()) {
+                System.out.println("Depositor with AFM " + incoming[j].key() + " already exists.");
+                j++;
+            } else {
+                merged[count++] = incoming[j];
+                added[addedCount++] = incoming[j++];
+            }
+        }
+        while (i < existing.length) {
+            merged[count++] = existing[i++];
+        }
+
+        root = build(merged, 0, count - 1);
+        lastNameIndex.bulkLoad(added, addedCount);
+        suspicionIndex.bulkLoad(added, addedCount);
+    }
+
+    /**
+     * Copies the depositors of a subtree into the array in AFM order.
+     *
+     * @param node The root of the subtree.
+     * @param out The array that receives the depositors.
+     * @param pos The first free position of the array.
+     * @return The first free position after the subtree was copied.
      */
-    private TreeNode updateSavings(int AFM, double savings, TreeNode node) {
+    private int flatten(TreeNode node, LargeDepositor[] out, int pos) {
         if (node == null) {
-            System.out.println("Depositor with AFM " + AFM + " not found");
+            return pos;
+        }
+        pos = flatten(node.left, out, pos);
+        out[pos++] = node.item;
+        return flatten(node.right, out, pos);
+    }
+
+    /**
+     * Builds a subtree from the depositors sorted[lo..hi] in O(hi - lo) time.
+     * The root is picked uniformly at random among the depositors, as in a randomized BST
+     * each key is the root with probability 1/N, so the tree has the same shape distribution
+     * as one made by inserting the depositors one at a time.
+     *
+     * @param sorted The depositors sorted by AFM, without duplicates.
+     * @param lo The first position of the subtree (inclusive).
+     * @param hi The last position of the subtree (inclusive).
+     * @return The root of the subtree, or null if the range is empty.
+     */
+    private TreeNode build(LargeDepositor[] sorted, int lo, int hi) {
+        if (lo > hi) {
             return null;
         }
 
-        // Calculate the comparison result between the specified AFM and the AFM of the current node's depositor
-        int cmp = AFM - node.item.key();
+        int mid = lo + randomInt(hi - lo + 1);
+        TreeNode node = new TreeNode(sorted[mid]);
+        node.left = build(sorted, lo, mid - 1);
+        node.right = build(sorted, mid + 1, hi);
+        update(node);
+        return node;
+    }
 
-        // If the specified AFM is less than the current node's depositor's AFM, recursively update savings in the left subtree
-        if (cmp < 0) {
-            node.left = updateSavings(AFM, savings, node.left);
-        } 
-        // If the specified AFM is greater than the current node's depositor's AFM, recursively update savings in the right subtree
-        else if (cmp > 0) {
-            node.right = updateSavings(AFM, savings, node.right);
-        } 
-        // If the specified AFM matches the current node's depositor's AFM, update the savings amount for the depositor
-        else {
-            node.item = new LargeDepositor(AFM, node.item.firstName, node.item.lastName, savings, node.item.taxedIncome);
+    /**
+     * Updates the savings of an existing depositor in place: the LargeDepositor object and the
+     * tree nodes are kept, only the savings totals on the search path are recomputed.
+     *
+     * @param AFM The AFM of the depositor whose savings are to be updated.
+     * @param savings The new savings amount.
+     * @return true if the depositor was updated, false if the AFM is not in the tree.
+     */
+    @Override
+    public boolean updateSavings(int AFM, double savings) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        TreeNode[] path = new TreeNode[32];
+        int depth = 0;
+        TreeNode node = root;
+        while (node != null && node.item.key() != AFM) {
+            path = push(path, depth++, node);
+            node = AFM < node.item.key() ? node.left : node.right;
+        }
+        if (node == null) {
+            if (metrics != null) {
+                record(TreeMetrics.UPDATE, start, false);
+            }
+            return false;
         }
 
-        // Return the updated TreeNode after updating the savings, or null if the depositor is not found
-        return node;
+        setSavings(node, savings);
+        update(node);
+        // The savings totals of every node on the search path depend on the updated item
+        while (depth > 0) {
+            update(path[--depth]);
+        }
+        if (metrics != null) {
+            record(TreeMetrics.UPDATE, start, true);
+        }
+        return true;
+    }
+
+    /**
+     * Updates the savings of many depositors in one merged walk of the tree: the AFMs are
+     * sorted, and every subtree is entered once with the run of sorted AFMs that fall into it,
+     * so shared path prefixes are walked (and their totals recomputed) only once.
+     * If an AFM appears more than once, its last savings value wins.
+     *
+     * @param afms The AFMs of the depositors to update.
+     * @param savings The new savings amounts, savings[i] for afms[i].
+     * @return The number of AFMs that were found and updated.
+     */
+    public int updateSavings(int[] afms, double[] savings) {
+        if (afms.length != savings.length) {
+            throw new IllegalArgumentException("Got " + afms.length + " AFMs and " + savings.length + " savings");
+        }
+
+        long[] sorted = sortByAFM(afms);
+        return updateSavings(root, sorted, 0, sorted.length, savings);
+    }
+
+    /**
+     * Sorts the positions of a batch of AFMs by AFM. Each entry holds the AFM in the high half
+     * and its position in the batch in the low half, so equal AFMs stay in batch order.
+     *
+     * @param afms The AFMs of the batch.
+     * @return The sorted entries, see afmOf and positionOf.
+     */
+    private static long[] sortByAFM(int[] afms) {
+        long[] sorted = new long[afms.length];
+        for (int i = 0; i < afms.length; i++) {
+            sorted[i] = ((long) afms[i] << 32) | i;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static int afmOf(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    private static int positionOf(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Applies the sorted updates sorted[from..to) to the subtree.
+     *
+     * @return The number of depositors of the subtree that were updated.
+     */
+    private int updateSavings(TreeNode node, long[] sorted, int from, int to, double[] savings) {
+        if (node == null || from == to) {
+            return 0;
+        }
+
+        int key = node.item.key();
+        int lessEnd = lowerBound(sorted, from, to, key);
+        int equalEnd = key == Integer.MAX_VALUE ? to : lowerBound(sorted, lessEnd, to, key + 1);
+
+        int updated = updateSavings(node.left, sorted, from, lessEnd, savings)
+                + updateSavings(node.right, sorted, equalEnd, to, savings);
+        if (equalEnd > lessEnd) {
+            setSavings(node, savings[positionOf(sorted[equalEnd - 1])]);
+            updated++;
+        }
+        if (updated > 0) {
+            update(node);
+        }
+        return updated;
+    }
+
+    // First position in sorted[from..to) whose AFM is >= key, 'to' if there is none
+    private static int lowerBound(long[] sorted, int from, int to, int key) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (afmOf(sorted[mid]) < key) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
     }
 
+    // Change the savings of the node's depositor, the caller recomputes the totals
+    private void setSavings(TreeNode node, double savings) {
+        // The suspicion score depends on the savings, so the entry must move in that index
+        suspicionIndex.remove(node.item);
+        node.item.setSavings(savings);
+        suspicionIndex.insert(node.item);
+    }
+
+    // Find the depositor with the given AFM without printing anything, null if absent
+    private LargeDepositor find(int AFM) {
+        TreeNode node = root;
+        while (node != null) {
+            int key = node.item.key();
+            if (AFM == key) {
+                return node.item;
+            }
+            node = AFM < key ? node.left : node.right;
+        }
+        return null;
+    }
 
-    // Search for a depositor by AFM
+    // Search for a depositor by AFM; the result is the stored object, read-only (see the class comment)
     @Override
     public LargeDepositor searchByAFM(int AFM) {
-        return searchByAFM(AFM, root);
+        long start = metrics == null ? 0 : System.nanoTime();
+        LargeDepositor item;
+        if (!iterative) {
+            item = searchByAFM(AFM, root);
+        } else {
+            item = find(AFM);
+            if (item == null) {
+                System.out.println("Depositor with AFM " + AFM + " not found.");
+            }
+        }
+        if (metrics != null) {
+            record(TreeMetrics.SEARCH, start, item != null);
+        }
+        return item;
     }
 
     /**
@@ -222,60 +808,187 @@ class RandomizedBST implements TaxEvasionInterface {
         }
     }
 
+    /**
+     * Looks up a batch of AFMs without printing anything. The AFMs are sorted and the tree is
+     * walked once, every subtree with the run of sorted AFMs that fall into it, so the path
+     * prefixes that the lookups share are walked only once.
+     * Every miss is counted (see getMissCount) and passed to the miss listener, if one is set.
+     *
+     * @param afms The AFMs to look up, in any order and possibly repeated.
+     * @return The depositors, result[i] for afms[i], with null for the AFMs that are not in the tree.
+     */
+    public LargeDepositor[] searchByAFM(int[] afms) {
+        long[] sorted = sortByAFM(afms);
+        LargeDepositor[] result = new LargeDepositor[afms.length];
+        searchByAFM(root, sorted, 0, sorted.length, result);
+
+        // Report the misses in AFM order
+        for (long entry : sorted) {
+            if (result[positionOf(entry)] == null) {
+                misses++;
+                if (missListener != null) {
+                    missListener.accept(afmOf(entry));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Fill in the results of the sorted lookups sorted[from..to) that fall into the subtree
+    private void searchByAFM(TreeNode node, long[] sorted, int from, int to, LargeDepositor[] result) {
+        while (node != null && from < to) {
+            int key = node.item.key();
+            int lessEnd = lowerBound(sorted, from, to, key);
+            int equalEnd = key == Integer.MAX_VALUE ? to : lowerBound(sorted, lessEnd, to, key + 1);
+            for (int i = lessEnd; i < equalEnd; i++) {
+                result[positionOf(sorted[i])] = node.item;
+            }
+
+            searchByAFM(node.left, sorted, from, lessEnd, result);
+            // Continue with the right subtree in the loop
+            node = node.right;
+            from = equalEnd;
+        }
+    }
+
+    /**
+     * Sets the listener that is called with the AFM of every miss of a batch lookup,
+     * e.g. to log the misses somewhere else than the console.
+     *
+     * @param listener The listener, or null for none.
+     */
+    public void setMissListener(IntConsumer listener) {
+        this.missListener = listener;
+    }
+
+    // Number of AFMs that batch lookups did not find so far
+    public long getMissCount() {
+        return misses;
+    }
+
 
     // Search for a depositor by last name
     @Override
-    public StringDoubleEndedQueueImpl<LargeDepositor> searchByLastName(String last_name) {
-        StringDoubleEndedQueueImpl<LargeDepositor> result = new StringDoubleEndedQueueImpl<>();
-        searchByLastName(last_name, root, result);
-        return result.size() > 0 ? result : null;
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name) {
+        return searchByLastName(last_name, Integer.MAX_VALUE);
     }
 
     /**
-     * Searches for depositors with a given last name in the binary search tree.
-     * If depositors with the specified last name are found, they are added to the result queue.
-     * 
+     * Searches for depositors with a given last name through the last name trie.
+     * The name's code in NameDictionary.SHARED leads straight to the trie node of the name,
+     * which holds its depositors in AFM order, so the search costs O(length of the name + k)
+     * for k results; a name no depositor ever had is rejected by the dictionary.
+     *
      * @param last_name The last name of the depositors to search for.
-     * @param node The current TreeNode being considered for searching.
-     * @param result The queue to store the depositors with the specified last name.
+     * @param limit The maximum number of depositors to return, e.g. MAX_LAST_NAME_RESULTS.
+     * @return The queue of matching depositors ordered by AFM, or null if none was found.
      */
-    private void searchByLastName(String last_name, TreeNode node, StringDoubleEndedQueueImpl<LargeDepositor> result) {
-        if (node != null) {
-            // Compare the specified last name with the last name of the current node's depositor
-            int cmp = last_name.compareTo(node.item.lastName);
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name, int limit) {
+        StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueArrayImpl<>();
+        lastNameIndex.collectExact(NameDictionary.SHARED.code(last_name), limit, result);
+        return result.size() > 0 ? result : null;
+    }
 
-            if (cmp < 0) {
-                searchByLastName(last_name, node.left, result);
-            } 
-            else if (cmp > 0) {
-                searchByLastName(last_name, node.right, result);
-            } 
-            // If the specified last name matches the current node's depositor's last name,
-            // add the current depositor to the result queue and recursively search for more depositors
-            // with the same last name in the right subtree (as depositors are sorted by last name)
-            else {
-                result.addLast(node.item);
-                searchByLastName(last_name, node.right, result);
-            }
+    /**
+     * Searches for depositors whose last name starts with the given prefix, for when only the
+     * start of a transliterated name is known. Stops at the limit without visiting the rest.
+     *
+     * @param prefix The start of the last name, case-sensitive.
+     * @param limit The maximum number of depositors to return, e.g. MAX_LAST_NAME_RESULTS.
+     * @return The queue of matching depositors ordered by (lastName, AFM), or null if none was found.
+     */
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastNamePrefix(String prefix, int limit) {
+        StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueArrayImpl<>();
+        lastNameIndex.collectPrefix(prefix, limit, result);
+        return result.size() > 0 ? result : null;
+    }
+
+    /**
+     * Searches for depositors whose last name is within maxEdits character insertions,
+     * deletions or substitutions of the given name, e.g. "Papadopoulos" finds "Papadopulos"
+     * with maxEdits 1. The closest names come first, and the search stops at the limit.
+     *
+     * @param last_name The last name as spelled by the user.
+     * @param maxEdits The largest edit distance accepted; 1 or 2 keeps the search fast.
+     * @param limit The maximum number of depositors to return, e.g. MAX_LAST_NAME_RESULTS.
+     * @return The queue of matching depositors, by edit distance and then by (lastName, AFM),
+     *         or null if none was found.
+     */
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastNameSimilar(String last_name, int maxEdits, int limit) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("maxEdits must not be negative: " + maxEdits);
         }
+        StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueArrayImpl<>();
+        lastNameIndex.collectSimilar(last_name, maxEdits, limit, result);
+        return result.size() > 0 ? result : null;
     }
 
 
     // Remove depositor by AFM
     @Override
     public void remove(int AFM) {
-        root = remove(AFM, root);
+        long start = metrics == null ? 0 : System.nanoTime();
+        LargeDepositor removed = find(AFM);
+        if (!iterative) {
+            root = remove(AFM, root);
+        } else if (removed == null) {
+            System.out.println("Depositor with AFM " + AFM + " not found.");
+        } else {
+            root = removeIterative(AFM, root);
+        }
+        if (removed != null) {
+            lastNameIndex.remove(removed);
+            suspicionIndex.remove(removed);
+        }
+        if (metrics != null) {
+            record(TreeMetrics.REMOVE, start, removed != null);
+        }
     }
 
     /**
-     * Removes the depositor with the specified AFM (ΑΦΜ) from the binary search tree if found.
-     * If the depositor is not found, prints a message indicating the absence of the depositor with the given AFM.
-     * 
-     * @param AFM The AFM of the depositor to be removed.
-     * @param node The current TreeNode being considered for removal.
-     * @return The updated TreeNode after removing the depositor, or null if the depositor with the specified AFM is not found.
+     * Iterative version of remove: finds the node while remembering the path to it, replaces
+     * it with the join of its subtrees and then updates the totals of the path bottom-up.
+     *
+     * @param AFM The AFM of the depositor to be removed, known to be in the tree.
+     * @param top The root of the tree.
+     * @return The new root of the tree.
      */
-    private TreeNode remove(int AFM, TreeNode node) {
+    private TreeNode removeIterative(int AFM, TreeNode top) {
+        TreeNode[] path = new TreeNode[32];
+        int depth = 0;
+        TreeNode node = top;
+
+        while (node.item.key() != AFM) {
+            path = push(path, depth++, node);
+            node = AFM < node.item.key() ? node.left : node.right;
+        }
+
+        TreeNode joined = joinIterative(node.left, node.right);
+        if (depth == 0) {
+            return joined;
+        }
+
+        TreeNode parent = path[depth - 1];
+        if (parent.left == node) {
+            parent.left = joined;
+        } else {
+            parent.right = joined;
+        }
+        while (depth > 0) {
+            update(path[--depth]);
+        }
+        return top;
+    }
+
+    /**
+     * Removes the depositor with the specified AFM (ΑΦΜ) from the binary search tree if found.
+     * If the depositor is not found, prints a message indicating the absence of the depositor with the given AFM.
+     * 
+     * @param AFM The AFM of the depositor to be removed.
+     * @param node The current TreeNode being considered for removal.
+     * @return The updated TreeNode after removing the depositor, or null if the depositor with the specified AFM is not found.
+     */
+    private TreeNode remove(int AFM, TreeNode node) {
         if (node == null) {
             System.out.println("Depositor with AFM " + AFM + " not found.");
             return null;
@@ -297,8 +1010,8 @@ class RandomizedBST implements TaxEvasionInterface {
     
         // If the node is not null, update the size of the node
         if (node != null) {
-            // Update the size of the node based on the sizes of its left and right subtrees
-            node.N = 1 + size(node.left) + size(node.right);
+            // Update the size and the totals of the node based on its left and right subtrees
+            update(node);
         }
     
         // Return the updated TreeNode after removing the depositor, or null if the depositor is not found
@@ -317,89 +1030,855 @@ class RandomizedBST implements TaxEvasionInterface {
         // If one of the subtrees is empty, return the other subtree
         if (a == null) return b;
         if (b == null) return a;
+        if (metrics != null) {
+            metrics.joinSteps.increment();
+        }
 
         // Generate a random number between 0 and the total number of nodes in both subtrees
         // The probability of choosing a node from subtree 'a' is proportional to the size of subtree 'a'
-        if (Math.random() * (a.N + b.N) < a.N) {
+        if (randomInt(a.N + b.N) < a.N) {
             // If the random number falls within the size of subtree 'a', attach 'b' to the right of 'a'
             // Recursively join the right subtree of 'a' with 'b'
             a.right = join(a.right, b);
-            // Update the size of subtree 'a'
-            a.N = 1 + size(a.left) + size(a.right);
+            // Update the size and the totals of subtree 'a'
+            update(a);
             // Return 'a' as the new root of the combined tree
             return a;
         } else {
             // If the random number falls outside the size of subtree 'a', attach 'a' to the left of 'b'
             // Recursively join 'a' with the left subtree of 'b'
             b.left = join(a, b.left);
-            // Update the size of subtree 'b'
-            b.N = 1 + size(b.left) + size(b.right);
+            // Update the size and the totals of subtree 'b'
+            update(b);
             // Return 'b' as the new root of the combined tree
             return b;
         }
 }
 
-    // Calculate mean savings of all depositors
+    /**
+     * Iterative version of join with the same random choices: every step picks the root of
+     * 'a' or of 'b', hangs it below the node picked before and continues with the part of
+     * the two trees that is still to be joined.
+     *
+     * @param a The root of the first subtree.
+     * @param b The root of the second subtree, all its keys larger than those of 'a'.
+     * @return The root of the combined tree.
+     */
+    private TreeNode joinIterative(TreeNode a, TreeNode b) {
+        TreeNode[] path = new TreeNode[32];
+        int depth = 0;
+        TreeNode result = null;
+        TreeNode parent = null;
+        boolean attachRight = false; // Which child of 'parent' receives the next node
+
+        while (a != null && b != null) {
+            TreeNode chosen;
+            boolean chosenFromA = randomInt(a.N + b.N) < a.N;
+            if (chosenFromA) {
+                // 'a' stays the root, its right subtree is joined with 'b'
+                chosen = a;
+                a = a.right;
+            } else {
+                // 'b' stays the root, 'a' is joined with its left subtree
+                chosen = b;
+                b = b.left;
+            }
+
+            if (parent == null) {
+                result = chosen;
+            } else if (attachRight) {
+                parent.right = chosen;
+            } else {
+                parent.left = chosen;
+            }
+            path = push(path, depth++, chosen);
+            parent = chosen;
+            attachRight = chosenFromA;
+        }
+        if (metrics != null) {
+            metrics.joinSteps.add(depth);
+        }
+
+        TreeNode rest = a != null ? a : b;
+        if (parent == null) {
+            return rest;
+        } else if (attachRight) {
+            parent.right = rest;
+        } else {
+            parent.left = rest;
+        }
+
+        while (depth > 0) {
+            update(path[--depth]);
+        }
+        return result;
+    }
+
+    // Subtrees with fewer nodes than this (both operands together) are combined without forking
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    // The set operations of combine()
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+
+    // Result of split(TreeNode, int): the subtrees with smaller and larger keys and the node with the key itself
+    private static final class Split {
+        TreeNode less;
+        TreeNode equal;
+        TreeNode greater;
+    }
+
+    /**
+     * Moves the depositors with AFM >= the given AFM to a new tree, in O(log n) expected time
+     * for the tree itself plus O(m log n) for the secondary indexes, for m moved depositors.
+     *
+     * @param AFM The first AFM of the new tree.
+     * @return The tree with the depositors whose AFM is >= AFM; this tree keeps the smaller ones.
+     */
+    public RandomizedBST split(int AFM) {
+        Split parts = split(root, AFM);
+        RandomizedBST greater = new RandomizedBST(split(random));
+        greater.root = join(parts.equal, parts.greater, split(random));
+        root = parts.less;
+
+        LargeDepositor[] moved = new LargeDepositor[size(greater.root)];
+        flatten(greater.root, moved, 0);
+        updateIndexes(false, moved, moved.length);
+        greater.updateIndexes(true, moved, moved.length);
+        return greater;
+    }
+
+    /**
+     * Adds the depositors of the other tree that are not in this tree (by AFM); for an AFM in
+     * both trees this tree's depositor is kept. The other tree is copied first and is not changed.
+     * Subtrees are combined in parallel on the common ForkJoinPool.
+     *
+     * @param other The tree whose depositors are added.
+     */
+    public void union(RandomizedBST other) {
+        combine(UNION, other);
+    }
+
+    /**
+     * Keeps only the depositors whose AFM is also in the other tree, which is not changed.
+     *
+     * @param other The tree whose AFMs are kept.
+     */
+    public void intersection(RandomizedBST other) {
+        combine(INTERSECTION, other);
+    }
+
+    /**
+     * Removes the depositors whose AFM is in the other tree, which is not changed.
+     *
+     * @param other The tree whose AFMs are removed.
+     */
+    public void difference(RandomizedBST other) {
+        combine(DIFFERENCE, other);
+    }
+
+    // Combine this tree with a copy of the other one and bring the secondary indexes up to date
+    private void combine(int operation, RandomizedBST other) {
+        TreeNode copy = copy(other.root);
+        LargeDepositor[] mine = new LargeDepositor[size(root)];
+        flatten(root, mine, 0);
+        LargeDepositor[] theirs = new LargeDepositor[size(copy)];
+        flatten(copy, theirs, 0);
+
+        // The depositors the operation adds (union) or removes (intersection, difference)
+        LargeDepositor[] changed = new LargeDepositor[operation == UNION ? theirs.length : mine.length];
+        int changedCount = 0;
+        int i = 0, j = 0;
+        while (i < mine.length || j < theirs.length) {
+            int cmp = i == mine.length ? 1 : j == theirs.length ? -1
+                    : Integer.compare(mine[i].key(), theirs[j].key());
+            if (cmp > 0 && operation == UNION) {
+                changed[changedCount++] = theirs[j];
+            } else if ((cmp < 0 && operation == INTERSECTION) || (cmp == 0 && operation == DIFFERENCE)) {
+                changed[changedCount++] = mine[i];
+            }
+            if (cmp <= 0) {
+                i++;
+            }
+            if (cmp >= 0) {
+                j++;
+            }
+        }
+
+        RandomGenerator generator = split(random);
+        if (canFork(generator)) {
+            root = ForkJoinPool.commonPool().invoke(new SetOperation(operation, root, copy, generator));
+        } else {
+            root = combine(operation, root, copy, generator);
+        }
+        updateIndexes(operation == UNION, changed, changedCount);
+    }
+
+    // Forked subtasks need their own generator: ThreadLocalRandom or a split of a splittable one
+    private static boolean canFork(RandomGenerator generator) {
+        return generator == null || generator instanceof RandomGenerator.SplittableGenerator;
+    }
+
+    // A copy of the subtree with copies of its depositors, so the two trees never share an object
+    private TreeNode copy(TreeNode node) {
+        if (node == null) {
+            return null;
+        }
+        TreeNode copy = new TreeNode(node.item.copy());
+        copy.left = copy(node.left);
+        copy.right = copy(node.right);
+        update(copy);
+        return copy;
+    }
+
+    // Sets the children of a node and recomputes its totals
+    private TreeNode attach(TreeNode node, TreeNode left, TreeNode right) {
+        node.left = left;
+        node.right = right;
+        update(node);
+        return node;
+    }
+
+    /**
+     * Splits a subtree into the nodes with AFM smaller than, equal to and larger than the
+     * given AFM. The nodes are reused; the equal node, if any, is returned detached.
+     *
+     * @param node The root of the subtree.
+     * @param AFM The AFM to split around.
+     * @return The three parts, every one of them may be null.
+     */
+    private Split split(TreeNode node, int AFM) {
+        if (node == null) {
+            return new Split();
+        }
+        int key = node.item.key();
+        if (AFM == key) {
+            Split parts = new Split();
+            parts.less = node.left;
+            parts.greater = node.right;
+            parts.equal = attach(node, null, null);
+            return parts;
+        }
+        if (AFM < key) {
+            Split parts = split(node.left, AFM);
+            parts.greater = attach(node, parts.greater, node.right);
+            return parts;
+        }
+        Split parts = split(node.right, AFM);
+        parts.less = attach(node, node.left, parts.less);
+        return parts;
+    }
+
+    /**
+     * Union, intersection or difference of two subtrees, reusing their nodes.
+     * The root comes from 'a', or for the union from 'b' with probability |b| / (|a| + |b|),
+     * which keeps the result a random BST; the other subtree is split around it and the two
+     * halves are combined recursively. Where both subtrees hold an AFM the node of 'a' is kept.
+     *
+     * @param operation UNION, INTERSECTION or DIFFERENCE.
+     * @param a The root of the first subtree.
+     * @param b The root of the second subtree.
+     * @param generator The source of the random choices of this call, null for ThreadLocalRandom.
+     * @return The root of the result.
+     */
+    private TreeNode combine(int operation, TreeNode a, TreeNode b, RandomGenerator generator) {
+        if (a == null) {
+            return operation == UNION ? b : null;
+        }
+        if (b == null) {
+            return operation == INTERSECTION ? null : a;
+        }
+
+        if (operation == UNION && randomInt(generator, a.N + b.N) >= a.N) {
+            // Root from b, a's node with the same AFM replaces it
+            Split parts = split(a, b.item.key());
+            TreeNode[] children = combineChildren(operation, parts.less, b.left, parts.greater, b.right, generator);
+            return attach(parts.equal != null ? parts.equal : b, children[0], children[1]);
+        }
+
+        Split parts = split(b, a.item.key());
+        TreeNode[] children = combineChildren(operation, a.left, parts.less, a.right, parts.greater, generator);
+        boolean found = parts.equal != null;
+        boolean keep = operation == UNION || (operation == INTERSECTION ? found : !found);
+        if (keep) {
+            return attach(a, children[0], children[1]);
+        }
+        return join(children[0], children[1], generator);
+    }
+
+    // Combine (leftA, leftB) and (rightA, rightB), the left pair in a forked task if both pairs are large enough
+    private TreeNode[] combineChildren(int operation, TreeNode leftA, TreeNode leftB, TreeNode rightA, TreeNode rightB,
+                                       RandomGenerator generator) {
+        if (size(leftA) + size(leftB) + size(rightA) + size(rightB) < PARALLEL_THRESHOLD
+                || !canFork(generator) || !ForkJoinTask.inForkJoinPool()) {
+            return new TreeNode[] {combine(operation, leftA, leftB, generator), combine(operation, rightA, rightB, generator)};
+        }
+        SetOperation left = new SetOperation(operation, leftA, leftB, split(generator));
+        left.fork();
+        TreeNode right = combine(operation, rightA, rightB, generator);
+        return new TreeNode[] {left.join(), right};
+    }
+
+    // combine() as a ForkJoin task
+    private final class SetOperation extends RecursiveTask<TreeNode> {
+        private static final long serialVersionUID = 1L;
+
+        private final int operation;
+        private final TreeNode a;
+        private final TreeNode b;
+        private final RandomGenerator generator;
+
+        SetOperation(int operation, TreeNode a, TreeNode b, RandomGenerator generator) {
+            this.operation = operation;
+            this.a = a;
+            this.b = b;
+            this.generator = generator;
+        }
+
+        @Override
+        protected TreeNode compute() {
+            return combine(operation, a, b, generator);
+        }
+    }
+
+    // join() with an explicit source of randomness, for the set operations
+    private TreeNode join(TreeNode a, TreeNode b, RandomGenerator generator) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (metrics != null) {
+            metrics.joinSteps.increment();
+        }
+        if (randomInt(generator, a.N + b.N) < a.N) {
+            return attach(a, a.left, join(a.right, b, generator));
+        }
+        return attach(b, join(a, b.left, generator), b.right);
+    }
+
+    /**
+     * Adds depositors to both secondary indexes (a merge and rebuild of the suspicion index,
+     * inserts into the last name trie) or removes them one by one. When many are removed (more
+     * than a quarter of the depositors that stay in the tree), rebuilding the indexes from the
+     * tree is cheaper and is done instead. The two indexes are updated in parallel when the
+     * generator of the tree allows it.
+     *
+     * @param add true to add the depositors, false to remove them.
+     * @param items The depositors.
+     * @param count The number of depositors in items.
+     */
+    private void updateIndexes(boolean add, LargeDepositor[] items, int count) {
+        if (!add && count > size(root) / 4) {
+            lastNameIndex = new LastNameTrie();
+            suspicionIndex = new DepositorIndex(DepositorIndex.BY_SUSPICION, split(random));
+            LargeDepositor[] remaining = new LargeDepositor[size(root)];
+            flatten(root, remaining, 0);
+            updateIndexes(true, remaining, remaining.length);
+            return;
+        }
+
+        Runnable byLastName = () -> updateIndex(lastNameIndex, add, items, count);
+        Runnable bySuspicion = () -> updateIndex(suspicionIndex, add, items, count);
+        if (canFork(random)) {
+            ForkJoinTask.invokeAll(ForkJoinTask.adapt(byLastName), ForkJoinTask.adapt(bySuspicion));
+        } else {
+            byLastName.run();
+            bySuspicion.run();
+        }
+    }
+
+    private static void updateIndex(DepositorIndex index, boolean add, LargeDepositor[] items, int count) {
+        if (add) {
+            index.bulkLoad(items, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                index.remove(items[i]);
+            }
+        }
+    }
+
+    private static void updateIndex(LastNameTrie index, boolean add, LargeDepositor[] items, int count) {
+        if (add) {
+            index.bulkLoad(items, count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                index.remove(items[i]);
+            }
+        }
+    }
+
+    // Number of depositors in the tree, O(1)
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Returns the depositor with the i-th smallest AFM, in O(log n) through the subtree sizes.
+     *
+     * @param i The 0-based position in AFM order.
+     * @return The depositor at that position, or null if i is not between 0 and size() - 1.
+     */
+    public LargeDepositor select(int i) {
+        if (i < 0 || i >= size(root)) {
+            return null;
+        }
+
+        TreeNode node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (i < leftSize) {
+                node = node.left;
+            } else if (i > leftSize) {
+                i -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.item;
+            }
+        }
+    }
+
+    /**
+     * Counts the depositors with a smaller AFM, in O(log n).
+     * For a depositor in the tree this is its 0-based position, so select(rank(AFM)) finds it.
+     *
+     * @param AFM Any AFM, it does not have to be in the tree.
+     * @return The number of depositors with an AFM smaller than the given one.
+     */
+    public int rank(int AFM) {
+        int rank = 0;
+        TreeNode node = root;
+        while (node != null) {
+            int key = node.item.key();
+            if (AFM < key) {
+                node = node.left;
+            } else if (AFM > key) {
+                rank += 1 + size(node.left);
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return rank;
+    }
+
+    // Number of depositors with lowAFM <= AFM <= highAFM, O(log n)
+    public int countInRange(int lowAFM, int highAFM) {
+        if (lowAFM > highAFM) {
+            return 0;
+        }
+        int upTo = highAFM == Integer.MAX_VALUE ? size(root) : rank(highAFM + 1);
+        return upTo - rank(lowAFM);
+    }
+
+    /**
+     * Streams the depositors with lowAFM <= AFM <= highAFM in ascending AFM order.
+     * The iterator walks the tree lazily with an explicit stack: creating it costs O(log n)
+     * and each next() O(1) amortized, so reading k depositors costs O(log n + k).
+     * The tree must not be changed while the iterator is in use.
+     *
+     * @param lowAFM The smallest AFM of the range (inclusive).
+     * @param highAFM The largest AFM of the range (inclusive).
+     * @return The iterator over the range.
+     */
+    public Iterator<LargeDepositor> rangeByAFM(int lowAFM, int highAFM) {
+        return new RangeIterator(lowAFM, highAFM);
+    }
+
+    // In-order iterator over an AFM range, see rangeByAFM
+    private class RangeIterator implements Iterator<LargeDepositor> {
+        private final int highAFM;
+        private TreeNode[] stack = new TreeNode[32];
+        private int depth = 0;
+
+        RangeIterator(int lowAFM, int highAFM) {
+            this.highAFM = highAFM;
+            // Keep only the nodes >= lowAFM on the path, they are the ones still to visit
+            TreeNode node = root;
+            while (node != null) {
+                if (node.item.key() >= lowAFM) {
+                    stack = push(stack, depth++, node);
+                    node = node.left;
+                } else {
+                    node = node.right;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0 && stack[depth - 1].item.key() <= highAFM;
+        }
+
+        @Override
+        public LargeDepositor next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TreeNode node = stack[--depth];
+            TreeNode next = node.right;
+            while (next != null) {
+                stack = push(stack, depth++, next);
+                next = next.left;
+            }
+            return node.item;
+        }
+    }
+
+    // All depositors in ascending AFM order, see rangeByAFM
+    public Iterator<LargeDepositor> iteratorByAFM() {
+        return new RangeIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // All depositors, most suspicious first; the tree must not be changed while it is in use
+    public Iterator<LargeDepositor> iteratorBySuspicion() {
+        return Spliterators.iterator(suspicionIndex.spliterator(true));
+    }
+
+    // Spliterator over all depositors in ascending AFM order, see spliteratorByAFM(int, int)
+    public Spliterator<LargeDepositor> spliteratorByAFM() {
+        return new AFMSpliterator(root, 0, size(root));
+    }
+
+    /**
+     * Returns a spliterator over the depositors with lowAFM <= AFM <= highAFM in ascending AFM
+     * order. Its bounds are found in O(log n) through the subtree sizes, and it splits into
+     * halves of exact size, so parallel streams divide the work evenly.
+     * The tree must not be changed while it is in use.
+     *
+     * @param lowAFM The smallest AFM of the range (inclusive).
+     * @param highAFM The largest AFM of the range (inclusive).
+     * @return The spliterator over the range.
+     */
+    public Spliterator<LargeDepositor> spliteratorByAFM(int lowAFM, int highAFM) {
+        int from = rank(lowAFM);
+        return new AFMSpliterator(root, from, from + countInRange(lowAFM, highAFM));
+    }
+
+    // Spliterator over all depositors, most suspicious first; splits like spliteratorByAFM
+    public Spliterator<LargeDepositor> spliteratorBySuspicion() {
+        return suspicionIndex.spliterator(true);
+    }
+
+    // Stream of all depositors in ascending AFM order, call parallel() to split it
+    public Stream<LargeDepositor> streamByAFM() {
+        return StreamSupport.stream(spliteratorByAFM(), false);
+    }
+
+    // Stream of the depositors with lowAFM <= AFM <= highAFM in ascending AFM order
+    public Stream<LargeDepositor> streamByAFM(int lowAFM, int highAFM) {
+        return StreamSupport.stream(spliteratorByAFM(lowAFM, highAFM), false);
+    }
+
+    // Stream of all depositors, most suspicious first
+    public Stream<LargeDepositor> streamBySuspicion() {
+        return StreamSupport.stream(spliteratorBySuspicion(), false);
+    }
+
+    /**
+     * Spliterator over the depositors at positions [from, to) of AFM order. It finds its first
+     * depositor in O(log n) through the subtree sizes and then walks the tree with an explicit
+     * stack. trySplit halves the remaining positions.
+     */
+    private class AFMSpliterator implements Spliterator<LargeDepositor> {
+        private final TreeNode top;
+        private int from; // Position of the next depositor
+        private final int to;
+        private TreeNode[] stack; // Path to the next depositor, null until the first advance
+        private int depth;
+
+        AFMSpliterator(TreeNode top, int from, int to) {
+            this.top = top;
+            this.from = from;
+            this.to = to;
+        }
+
+        // Push the nodes of the path to position 'from' that are still to visit
+        private void seek() {
+            stack = new TreeNode[32];
+            depth = 0;
+            TreeNode node = top;
+            int r = from;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (r < leftSize) {
+                    stack = push(stack, depth++, node);
+                    node = node.left;
+                } else if (r > leftSize) {
+                    r -= leftSize + 1;
+                    node = node.right;
+                } else {
+                    stack = push(stack, depth++, node);
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super LargeDepositor> action) {
+            if (from >= to) {
+                return false;
+            }
+            if (stack == null) {
+                seek();
+            }
+            TreeNode node = stack[--depth];
+            TreeNode next = node.right;
+            while (next != null) {
+                stack = push(stack, depth++, next);
+                next = next.left;
+            }
+            from++;
+            action.accept(node.item);
+            return true;
+        }
+
+        @Override
+        public Spliterator<LargeDepositor> trySplit() {
+            int mid = (from + to) >>> 1;
+            if (mid <= from) {
+                return null;
+            }
+            AFMSpliterator prefix = new AFMSpliterator(top, from, mid);
+            from = mid;
+            stack = null; // Seek again from the new start
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return to - from;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SORTED | SIZED | SUBSIZED | NONNULL | DISTINCT;
+        }
+
+        @Override
+        public Comparator<? super LargeDepositor> getComparator() {
+            return AFM_ORDER;
+        }
+    }
+
+    // Calculate mean savings of all depositors in O(1) from the totals kept at the root
     @Override
     public double getMeanSavings() {
         if (root == null) {
             return 0.0;
         }
-        return getSumSavings(root) / root.N;
+        return root.sumSavings / root.N;
     }
 
-    private double getSumSavings(TreeNode node) {
-        if (node == null) {
+    // Population variance of the savings of all depositors, O(1)
+    public double getVarianceSavings() {
+        if (root == null) {
             return 0.0;
         }
-        return node.item.getSavings() + getSumSavings(node.left) + getSumSavings(node.right);
+        return variance(root.N, root.sumSavings, root.sumSquaredSavings);
     }
 
-    // Print top k large depositors
-    @Override
-    public void printTopLargeDepositors(int k) {
-        printTopLargeDepositors(root, k);
-        while (!topDepositorsQueue.isEmpty()) {
-            LargeDepositor depositor = topDepositorsQueue.removeFirst();
-            System.out.println(depositor);
+    // Standard deviation of the savings of all depositors, O(1)
+    public double getStdDevSavings() {
+        return Math.sqrt(getVarianceSavings());
+    }
+
+    // Mean taxed income of all depositors, O(1)
+    public double getMeanTaxedIncome() {
+        if (root == null) {
+            return 0.0;
         }
+        return root.sumTaxedIncome / root.N;
     }
 
-    // Helper method
-    private void printTopLargeDepositors(TreeNode node, int k) {
-        if (node != null) {
-            printTopLargeDepositors(node.right, k);
+    // Mean savings of the depositors with lowAFM <= AFM <= highAFM, O(log n)
+    public double getMeanSavings(int lowAFM, int highAFM) {
+        Aggregate range = aggregateRange(lowAFM, highAFM);
+        return range.count == 0 ? 0.0 : range.sumSavings / range.count;
+    }
+
+    // Variance of the savings of the depositors with lowAFM <= AFM <= highAFM, O(log n)
+    public double getVarianceSavings(int lowAFM, int highAFM) {
+        Aggregate range = aggregateRange(lowAFM, highAFM);
+        return range.count == 0 ? 0.0 : variance(range.count, range.sumSavings, range.sumSquaredSavings);
+    }
+
+    // Standard deviation of the savings of the depositors with lowAFM <= AFM <= highAFM, O(log n)
+    public double getStdDevSavings(int lowAFM, int highAFM) {
+        return Math.sqrt(getVarianceSavings(lowAFM, highAFM));
+    }
+
+    // Mean taxed income of the depositors with lowAFM <= AFM <= highAFM, O(log n)
+    public double getMeanTaxedIncome(int lowAFM, int highAFM) {
+        Aggregate range = aggregateRange(lowAFM, highAFM);
+        return range.count == 0 ? 0.0 : range.sumTaxedIncome / range.count;
+    }
+
+    private double variance(int count, double sum, double sumSquared) {
+        double mean = sum / count;
+        // Rounding can push the difference slightly below zero when all values are equal
+        return Math.max(0.0, sumSquared / count - mean * mean);
+    }
 
-            if (topDepositorsQueue.size() < k) {
-                topDepositorsQueue.addLast(node.item);
+    /**
+     * Collects the totals of all depositors with lowAFM <= AFM <= highAFM.
+     * Walks down to the node where the two range boundaries split and then follows
+     * each boundary once, adding whole subtrees that lie inside the range.
+     *
+     * @param lowAFM The smallest AFM of the range (inclusive).
+     * @param highAFM The largest AFM of the range (inclusive).
+     * @return The totals of the range.
+     */
+    private Aggregate aggregateRange(int lowAFM, int highAFM) {
+        Aggregate result = new Aggregate();
+        TreeNode node = root;
+
+        while (node != null) {
+            int key = node.item.key();
+            if (key < lowAFM) {
+                node = node.right;
+            } 
+            else if (key > highAFM) {
+                node = node.left;
+            } 
+            else {
+                // The node is inside the range: everything between the two boundaries counts
+                result.add(node.item);
+                aggregateAtLeast(node.left, lowAFM, result);
+                aggregateAtMost(node.right, highAFM, result);
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    // Adds every depositor of the subtree with AFM >= lowAFM
+    private void aggregateAtLeast(TreeNode node, int lowAFM, Aggregate result) {
+        while (node != null) {
+            if (node.item.key() >= lowAFM) {
+                result.add(node.item);
+                result.add(node.right);
+                node = node.left;
             } else {
-                if (node.item.compareTo(topDepositorsQueue.getFirst()) > 0) {
-                    topDepositorsQueue.removeFirst();
-                    topDepositorsQueue.addLast(node.item);
-                }
+                node = node.right;
             }
+        }
+    }
 
-            printTopLargeDepositors(node.left, k);
+    // Adds every depositor of the subtree with AFM <= highAFM
+    private void aggregateAtMost(TreeNode node, int highAFM, Aggregate result) {
+        while (node != null) {
+            if (node.item.key() <= highAFM) {
+                result.add(node.item);
+                result.add(node.left);
+                node = node.right;
+            } else {
+                node = node.left;
+            }
         }
     }
 
+    // Print top k large depositors, most suspicious first, in O(k + log n)
+    @Override
+    public void printTopLargeDepositors(int k) {
+        PrintWriter out = bufferedStdout();
+        Iterator<LargeDepositor> top = iteratorBySuspicion();
+        for (int i = 0; i < k && top.hasNext(); i++) {
+            out.println(top.next());
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns one page of the suspicion ranking, most suspicious first.
+     * The ranking is kept up to date by insert, remove and updateSavings,
+     * so a page costs O(k + log n) instead of a walk over the whole tree.
+     *
+     * @param offset The number of most suspicious depositors to skip.
+     * @param k The maximum number of depositors to return.
+     * @return The queue with the depositors of the page, empty if the offset is past the end.
+     */
+    public StringDoubleEndedQueue<LargeDepositor> getTopLargeDepositors(int offset, int k) {
+        StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueArrayImpl<>(Math.min(k, size()));
+        suspicionIndex.collectDescending(offset, k, result);
+        return result;
+    }
+
+    /**
+     * Position of a depositor in the suspicion ranking, in O(log n).
+     *
+     * @param AFM The AFM of the depositor.
+     * @return 1 for the most suspicious depositor, or -1 if the AFM is not in the tree.
+     */
+    public int getSuspicionRank(int AFM) {
+        LargeDepositor item = find(AFM);
+        if (item == null) {
+            return -1;
+        }
+        return suspicionIndex.size() - suspicionIndex.rank(item);
+    }
+
     // Print all depositors by AFM (sorted)
     @Override
     public void printByAFM() {
-        printByAFM(root);
+        PrintWriter out = bufferedStdout();
+        Iterator<LargeDepositor> all = iteratorByAFM();
+        while (all.hasNext()) {
+            out.println(all.next());
+        }
+        out.flush();
+    }
+
+    // System.out behind a large buffer, so printing does not flush once per line; flush it, do not close it
+    static PrintWriter bufferedStdout() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), PRINT_BUFFER_SIZE));
+    }
+
+    /**
+     * Passes every depositor to the action in ascending AFM order.
+     *
+     * @param action The action to perform on each depositor.
+     */
+    public void forEachByAFM(Consumer<LargeDepositor> action) {
+        if (iterative) {
+            forEachIterative(action);
+        } else {
+            forEachByAFM(root, action);
+        }
     }
 
     // Helper method
-    private void printByAFM(TreeNode node) {
+    private void forEachByAFM(TreeNode node, Consumer<LargeDepositor> action) {
         if (node != null) {
-            printByAFM(node.left);
-            System.out.println(node.item);
-            printByAFM(node.right);
+            forEachByAFM(node.left, action);
+            action.accept(node.item);
+            forEachByAFM(node.right, action);
         }
     }
 
-    // Main Function
-    public static void main(String[] args) {
+    // In-order traversal with an explicit stack instead of recursion
+    private void forEachIterative(Consumer<LargeDepositor> action) {
+        TreeNode[] stack = new TreeNode[32];
+        int depth = 0;
+        TreeNode node = root;
+
+        while (node != null || depth > 0) {
+            while (node != null) {
+                stack = push(stack, depth++, node);
+                node = node.left;
+            }
+            node = stack[--depth];
+            action.accept(node.item);
+            node = node.right;
+        }
+    }
+
+    // Main Function: the interactive menu, or with --batch a script of commands (see DepositorBatch)
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            DepositorBatch.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         RandomizedBST bst = new RandomizedBST();
         Scanner scanner = new Scanner(System.in);
 
@@ -414,6 +1893,8 @@ class RandomizedBST implements TaxEvasionInterface {
             System.out.println("7. Calculate mean savings");
             System.out.println("8. Print top large depositors");
             System.out.println("9. Print all depositors sorted by AFM");
+            System.out.println("10. Search depositors by last name prefix");
+            System.out.println("11. Search depositors by similar last name");
             System.out.println("0. Exit");
 
             System.out.print("Enter your choice: ");
@@ -438,7 +1919,9 @@ class RandomizedBST implements TaxEvasionInterface {
                     int afm = scanner.nextInt();
                     System.out.println("Enter new savings: ");
                     double newSavings = scanner.nextDouble();
-                    bst.updateSavings(afm, newSavings);
+                    if (!bst.updateSavings(afm, newSavings)) {
+                        System.out.println("Depositor with AFM " + afm + " not found");
+                    }
                     break;
                 case 4:
                     // Search depositor by AFM
@@ -455,12 +1938,14 @@ class RandomizedBST implements TaxEvasionInterface {
                     // Search depositors by last name
                     System.out.println("Enter last name: ");
                     String lastName = scanner.nextLine();
-                    StringDoubleEndedQueueImpl<LargeDepositor> resultList = bst.searchByLastName(lastName);
+                    StringDoubleEndedQueue<LargeDepositor> resultList = bst.searchByLastName(lastName, MAX_LAST_NAME_RESULTS);
                     if (resultList != null) {
                         System.out.println("Depositors with last name " + lastName + ":");
                         resultList.printQueue(System.out);
-                        break;
+                    } else {
+                        System.out.println("No depositors with last name " + lastName);
                     }
+                    break;
                 case 6:
                     // Remove depositor by AFM
                     System.out.println("Enter AFM: ");
@@ -482,6 +1967,34 @@ class RandomizedBST implements TaxEvasionInterface {
                     // Print all depositors sorted by AFM
                     bst.printByAFM();
                     break;
+                case 10: {
+                    // Search depositors by the start of the last name
+                    System.out.println("Enter last name prefix: ");
+                    String prefix = scanner.nextLine();
+                    StringDoubleEndedQueue<LargeDepositor> results = bst.searchByLastNamePrefix(prefix, MAX_LAST_NAME_RESULTS);
+                    if (results != null) {
+                        System.out.println("Depositors with last name starting with " + prefix + ":");
+                        results.printQueue(System.out);
+                    } else {
+                        System.out.println("No depositors with last name starting with " + prefix);
+                    }
+                    break;
+                }
+                case 11: {
+                    // Search depositors by a last name that may be misspelled
+                    System.out.println("Enter last name: ");
+                    String name = scanner.nextLine();
+                    System.out.println("Enter maximum number of edits: ");
+                    int maxEdits = scanner.nextInt();
+                    StringDoubleEndedQueue<LargeDepositor> results = bst.searchByLastNameSimilar(name, maxEdits, MAX_LAST_NAME_RESULTS);
+                    if (results != null) {
+                        System.out.println("Depositors with last name similar to " + name + ":");
+                        results.printQueue(System.out);
+                    } else {
+                        System.out.println("No depositors with last name similar to " + name);
+                    }
+                    break;
+                }
                 case 0:
                     // Exit the program
                     System.out.println("Exiting program");
@@ -0,0 +1,447 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Thread-safe implementation of TaxEvasionInterface that partitions the AFMs into ranges,
+ * one RandomizedBST (a shard) per range, so that writes to different ranges run in parallel.
+ *
+ * Every shard has its own read-write lock. Operations on one AFM lock only the shard that owns
+ * it; the global operations (mean, top k, printByAFM, last name search) visit the shards one
+ * after the other and merge their answers. The ranges start as equal slices of the 9-digit
+ * AFMs and are moved to the quantiles of the stored AFMs when one shard grows well beyond
+ * its share (see rebalance), which briefly blocks every other operation.
+ *
+ * updateSavings changes the stored depositor in place under its shard's write lock, so no
+ * stored depositor ever leaves a lock: insert stores a copy of its argument, and the searches
+ * and the top k merge work on copies made under the shard's read lock. A caller can read what
+ * it gets back from any thread, and changing it does not change the store. Only the action of
+ * forEachByAFM sees the stored depositors, while the shard is read-locked.
+ */
+public class ShardedRandomizedBST implements TaxEvasionInterface {
+
+    private static final int FIRST_AFM = 100000000;
+    private static final int LAST_AFM = 999999999;
+
+    // A shard is rebalanced when it holds more than this many times its share of the depositors
+    private static final int IMBALANCE_FACTOR = 2;
+    // ...and at least this many depositors, so that small trees are left alone
+    private static final int MIN_REBALANCE_SIZE = 10000;
+
+    private static final class Shard {
+        final RandomizedBST tree;
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        Shard(RandomizedBST tree) {
+            this.tree = tree;
+        }
+    }
+
+    // Shard i holds the AFMs in [lowerBounds[i], lowerBounds[i + 1]), the last one up to Integer.MAX_VALUE
+    private int[] lowerBounds;
+    private Shard[] shards;
+    // Read-locked by every operation, write-locked to replace the shards and their ranges
+    private final ReadWriteLock layoutLock = new ReentrantReadWriteLock();
+    private final SplittableRandom random; // Split once per shard, null for ThreadLocalRandom
+    private final AtomicInteger count = new AtomicInteger(); // Depositors in all shards
+
+    // One shard per processor
+    public ShardedRandomizedBST() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedRandomizedBST(int shardCount) {
+        this(shardCount, null);
+    }
+
+    // Seeded shards, for reproducible tree shapes
+    public ShardedRandomizedBST(int shardCount, long seed) {
+        this(shardCount, new SplittableRandom(seed));
+    }
+
+    private ShardedRandomizedBST(int shardCount, SplittableRandom random) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Need at least one shard, got " + shardCount);
+        }
+        this.random = random;
+        lowerBounds = new int[shardCount];
+        shards = new Shard[shardCount];
+        long width = ((long) LAST_AFM - FIRST_AFM + 1) / shardCount;
+        for (int i = 0; i < shardCount; i++) {
+            lowerBounds[i] = i == 0 ? Integer.MIN_VALUE : (int) (FIRST_AFM + i * width);
+            shards[i] = newShard();
+        }
+    }
+
+    private Shard newShard() {
+        return new Shard(random == null ? new RandomizedBST() : new RandomizedBST(random.split()));
+    }
+
+    // Index of the shard that owns the AFM, the caller holds the layout lock
+    private int shardOf(int AFM) {
+        int lo = 0;
+        int hi = lowerBounds.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (lowerBounds[mid] <= AFM) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public void insert(LargeDepositor item) {
+        boolean overfull;
+        layoutLock.readLock().lock();
+        try {
+            Shard shard = shards[shardOf(item.key())];
+            shard.lock.writeLock().lock();
+            try {
+                int before = shard.tree.size();
+                shard.tree.insert(item.copy());
+                count.addAndGet(shard.tree.size() - before);
+                overfull = isOverfull(shard.tree.size());
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+        if (overfull) {
+            rebalance();
+        }
+    }
+
+    // Whether a shard of this size holds too much more than its share, the caller holds the layout lock
+    private boolean isOverfull(int shardSize) {
+        return shardSize >= MIN_REBALANCE_SIZE && shards.length > 1
+                && (long) shardSize * shards.length > (long) IMBALANCE_FACTOR * count.get();
+    }
+
+    /**
+     * Loads the file, then bulk loads every shard's part of it in parallel.
+     * The shards are rebalanced afterwards if the file made them uneven.
+     */
+    @Override
+    public void load(String filename) {
+        DepositorFileParser.Result parsed;
+        try {
+            parsed = new DepositorFileParser().parse(Paths.get(filename));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for (DepositorFileParser.ParseError error : parsed.errors) {
+            System.out.println("Skipped malformed line in " + filename + ": " + error);
+        }
+
+        boolean overfull = false;
+        layoutLock.readLock().lock();
+        try {
+            List<List<LargeDepositor>> parts = new ArrayList<>(shards.length);
+            for (int i = 0; i < shards.length; i++) {
+                parts.add(new ArrayList<>());
+            }
+            for (LargeDepositor item : parsed.depositors) {
+                parts.get(shardOf(item.key())).add(item);
+            }
+
+            Shard[] current = shards;
+            IntStream.range(0, current.length).parallel().forEach(i -> {
+                Shard shard = current[i];
+                shard.lock.writeLock().lock();
+                try {
+                    int before = shard.tree.size();
+                    shard.tree.bulkLoad(parts.get(i));
+                    count.addAndGet(shard.tree.size() - before);
+                } finally {
+                    shard.lock.writeLock().unlock();
+                }
+            });
+
+            for (Shard shard : shards) {
+                shard.lock.readLock().lock();
+                try {
+                    overfull |= isOverfull(shard.tree.size());
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+        if (overfull) {
+            rebalance();
+        }
+    }
+
+    @Override
+    public boolean updateSavings(int AFM, double savings) {
+        layoutLock.readLock().lock();
+        try {
+            Shard shard = shards[shardOf(AFM)];
+            shard.lock.writeLock().lock();
+            try {
+                return shard.tree.updateSavings(AFM, savings);
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public LargeDepositor searchByAFM(int AFM) {
+        layoutLock.readLock().lock();
+        try {
+            Shard shard = shards[shardOf(AFM)];
+            shard.lock.readLock().lock();
+            try {
+                LargeDepositor item = shard.tree.searchByAFM(AFM);
+                return item == null ? null : item.copy();
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name) {
+        return searchByLastName(last_name, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Last name search over all shards. The shards cover increasing AFM ranges, so appending
+     * their answers in shard order keeps the result ordered by AFM, and the search stops as
+     * soon as the limit is reached.
+     *
+     * @param last_name The last name of the depositors to search for.
+     * @param limit The maximum number of depositors to return.
+     * @return The queue of matching depositors ordered by AFM, or null if none was found.
+     */
+    public StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name, int limit) {
+        StringDoubleEndedQueueArrayImpl<LargeDepositor> result = new StringDoubleEndedQueueArrayImpl<>();
+        layoutLock.readLock().lock();
+        try {
+            for (Shard shard : shards) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                shard.lock.readLock().lock();
+                try {
+                    StringDoubleEndedQueue<LargeDepositor> found = shard.tree.searchByLastName(last_name, limit - result.size());
+                    while (found != null && !found.isEmpty()) {
+                        result.addLast(found.removeFirst().copy());
+                    }
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+        return result.size() > 0 ? result : null;
+    }
+
+    @Override
+    public void remove(int AFM) {
+        layoutLock.readLock().lock();
+        try {
+            Shard shard = shards[shardOf(AFM)];
+            shard.lock.writeLock().lock();
+            try {
+                int before = shard.tree.size();
+                shard.tree.remove(AFM);
+                count.addAndGet(shard.tree.size() - before);
+            } finally {
+                shard.lock.writeLock().unlock();
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+    }
+
+    // Mean of all shards, from every shard's count and O(1) mean
+    @Override
+    public double getMeanSavings() {
+        double sum = 0;
+        long count = 0;
+        layoutLock.readLock().lock();
+        try {
+            for (Shard shard : shards) {
+                shard.lock.readLock().lock();
+                try {
+                    int size = shard.tree.size();
+                    sum += shard.tree.getMeanSavings() * size;
+                    count += size;
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+        return count == 0 ? 0.0 : sum / count;
+    }
+
+    // Number of depositors in all shards
+    public int size() {
+        return count.get();
+    }
+
+    // Cursor over one shard's top k, for the merge in printTopLargeDepositors
+    private static final class TopCursor {
+        final StringDoubleEndedQueue<LargeDepositor> queue;
+        LargeDepositor head;
+
+        TopCursor(StringDoubleEndedQueue<LargeDepositor> queue) {
+            this.queue = queue;
+            this.head = queue.removeFirst();
+        }
+    }
+
+    /**
+     * Prints the k most suspicious depositors: every shard gives its own top k, and a k-way
+     * merge (a heap with one cursor per shard) picks the overall top k from them.
+     */
+    @Override
+    public void printTopLargeDepositors(int k) {
+        PriorityQueue<TopCursor> heads = new PriorityQueue<>(
+                (a, b) -> DepositorIndex.BY_SUSPICION.compare(b.head, a.head));
+        layoutLock.readLock().lock();
+        try {
+            for (Shard shard : shards) {
+                shard.lock.readLock().lock();
+                try {
+                    // Copies, so that the merge after the unlock sees the values of this moment
+                    StringDoubleEndedQueue<LargeDepositor> top = shard.tree.getTopLargeDepositors(0, k);
+                    StringDoubleEndedQueue<LargeDepositor> copies = new StringDoubleEndedQueueArrayImpl<>(top.size());
+                    while (!top.isEmpty()) {
+                        copies.addLast(top.removeFirst().copy());
+                    }
+                    if (!copies.isEmpty()) {
+                        heads.add(new TopCursor(copies));
+                    }
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+
+        PrintWriter out = RandomizedBST.bufferedStdout();
+        for (int printed = 0; printed < k && !heads.isEmpty(); printed++) {
+            TopCursor cursor = heads.poll();
+            out.println(cursor.head);
+            if (!cursor.queue.isEmpty()) {
+                cursor.head = cursor.queue.removeFirst();
+                heads.add(cursor);
+            }
+        }
+        out.flush();
+    }
+
+    // Print all depositors by AFM: the shards one after the other, each in AFM order
+    @Override
+    public void printByAFM() {
+        PrintWriter out = RandomizedBST.bufferedStdout();
+        forEachByAFM(out::println);
+        out.flush();
+    }
+
+    /**
+     * Passes every depositor to the action in ascending AFM order. Each shard is read-locked
+     * while it is walked, so the action must not change this object.
+     *
+     * @param action The action to call for every depositor.
+     */
+    public void forEachByAFM(Consumer<LargeDepositor> action) {
+        layoutLock.readLock().lock();
+        try {
+            for (Shard shard : shards) {
+                shard.lock.readLock().lock();
+                try {
+                    shard.tree.forEachByAFM(action);
+                } finally {
+                    shard.lock.readLock().unlock();
+                }
+            }
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the shard boundaries to the quantiles of the stored AFMs, so that every shard holds
+     * about the same number of depositors, and rebuilds the shards in linear time.
+     * Blocks every other operation while it runs. Does nothing if no shard is overfull any more
+     * (another thread may have rebalanced first), unless forced.
+     *
+     * @param force true to rebalance even if the shards are even.
+     */
+    public void rebalance(boolean force) {
+        layoutLock.writeLock().lock();
+        try {
+            boolean overfull = false;
+            for (Shard shard : shards) {
+                overfull |= isOverfull(shard.tree.size());
+            }
+            if (!overfull && !force) {
+                return;
+            }
+
+            // The shards are in AFM order, so their in-order walks give all depositors sorted
+            List<LargeDepositor> all = new ArrayList<>(count.get());
+            for (Shard shard : shards) {
+                shard.tree.forEachByAFM(all::add);
+            }
+
+            // New lower bounds at the quantiles; with fewer depositors than shards the extra ones stay empty
+            int shardCount = shards.length;
+            int[] bounds = new int[shardCount];
+            bounds[0] = Integer.MIN_VALUE;
+            for (int i = 1; i < shardCount; i++) {
+                int from = (int) ((long) all.size() * i / shardCount);
+                bounds[i] = from < all.size() ? Math.max(all.get(from).key(), bounds[i - 1] + 1) : bounds[i - 1] + 1;
+            }
+
+            // Cut the sorted depositors at the new bounds
+            Shard[] rebuilt = new Shard[shardCount];
+            int from = 0;
+            for (int i = 0; i < shardCount; i++) {
+                int to = from;
+                while (to < all.size() && (i + 1 == shardCount || all.get(to).key() < bounds[i + 1])) {
+                    to++;
+                }
+                rebuilt[i] = newShard();
+                rebuilt[i].tree.bulkLoad(all.subList(from, to));
+                from = to;
+            }
+            lowerBounds = bounds;
+            shards = rebuilt;
+        } finally {
+            layoutLock.writeLock().unlock();
+        }
+    }
+
+    private void rebalance() {
+        rebalance(false);
+    }
+}
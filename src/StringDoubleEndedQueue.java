@@ -1,4 +1,5 @@
 import java.io.PrintStream;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 // Generic type data can be used for every function
@@ -8,7 +9,7 @@ import java.util.NoSuchElementException;
  * @param <T> the type of elements in the queue (Can take any type of data)
  */
 
-public interface StringDoubleEndedQueue<T> {
+public interface StringDoubleEndedQueue<T> extends Iterable<T> {
 	/**
 	 * @return true if the queue is empty
 	 */
@@ -67,4 +68,12 @@ public interface StringDoubleEndedQueue<T> {
 	 * @return number of elements in the queue
 	 */
 	public int size();
+
+	/**
+	 * return an iterator over the T items of the queue, starting from the front,
+	 * without removing them
+	 * @return iterator from the front to the end of the queue
+	 */
+	@Override
+	public Iterator<T> iterator();
 }
@@ -0,0 +1,180 @@
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.io.PrintStream;
+
+/**
+ * Double-ended queue backed by a circular array whose capacity is a power of two.
+ * Both ends are O(1) (removeLast included) and adding an item does not allocate
+ * unless the array has to grow, in which case its capacity doubles.
+ * @param <T> the type of elements in the queue
+ */
+public class StringDoubleEndedQueueArrayImpl<T> implements StringDoubleEndedQueue<T> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Object[] items;
+    private int head = 0; // Index of the first item
+    private int size = 0;
+
+    public StringDoubleEndedQueueArrayImpl() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    // Start with room for at least 'capacity' items
+    public StringDoubleEndedQueueArrayImpl(int capacity) {
+        items = new Object[capacityFor(Math.max(capacity, 1))];
+    }
+
+    // Smallest power of two >= n
+    private static int capacityFor(int n) {
+        int capacity = Integer.highestOneBit(n);
+        if (capacity < n) {
+            capacity <<= 1;
+        }
+        if (capacity <= 0) {
+            throw new IllegalStateException("Queue too large: " + n);
+        }
+        return capacity;
+    }
+
+    // Position of the i-th item from the front
+    private int index(int i) {
+        return (head + i) & (items.length - 1);
+    }
+
+    // Make room for 'extra' more items, copying the items to the start of a larger array
+    private void ensureCapacity(int extra) {
+        int needed = size + extra;
+        if (needed <= items.length) {
+            return;
+        }
+        Object[] grown = new Object[capacityFor(needed)];
+        int firstPart = Math.min(size, items.length - head);
+        System.arraycopy(items, head, grown, 0, firstPart);
+        System.arraycopy(items, 0, grown, firstPart, size - firstPart);
+        items = grown;
+        head = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T getFirst() throws NoSuchElementException {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return (T) items[head];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T getLast() throws NoSuchElementException {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return (T) items[index(size - 1)];
+    }
+
+    // Insert data in front of the queue
+    @Override
+    public void addFirst(T item) {
+        ensureCapacity(1);
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
+        size++;
+    }
+
+    // Insert data in the end of the queue
+    @Override
+    public void addLast(T item) {
+        ensureCapacity(1);
+        items[index(size)] = item;
+        size++;
+    }
+
+    /**
+     * Adds all the items at the end of the queue, in iteration order.
+     * When the number of items is known in advance the array grows at most once.
+     *
+     * @param source The items to add.
+     */
+    public void addAll(Iterable<? extends T> source) {
+        if (source instanceof Collection) {
+            ensureCapacity(((Collection<?>) source).size());
+        } else if (source instanceof StringDoubleEndedQueue) {
+            ensureCapacity(((StringDoubleEndedQueue<?>) source).size());
+        }
+        for (T item : source) {
+            addLast(item);
+        }
+    }
+
+    // Remove item from front
+    @Override
+    @SuppressWarnings("unchecked")
+    public T removeFirst() throws NoSuchElementException {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        T item = (T) items[head];
+        items[head] = null; // Let the item be garbage collected
+        head = (head + 1) & (items.length - 1);
+        size--;
+        return item;
+    }
+
+    // Remove item from the end, O(1) unlike the linked list
+    @Override
+    @SuppressWarnings("unchecked")
+    public T removeLast() throws NoSuchElementException {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        int last = index(size - 1);
+        T item = (T) items[last];
+        items[last] = null;
+        size--;
+        return item;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Print the T items of the queue, starting from the front
+    @Override
+    public void printQueue(PrintStream stream) {
+        for (int i = 0; i < size; i++) {
+            stream.print(items[index(i)] + " ");
+        }
+        stream.println();
+    }
+
+    // Iterate from the front to the end without removing anything
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (T) items[index(next++)];
+            }
+        };
+    }
+}
@@ -1,3 +1,4 @@
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.io.PrintStream;
 
@@ -130,4 +131,27 @@ public class StringDoubleEndedQueueImpl<T> implements StringDoubleEndedQueue<T>
 
         stream.println();
     }
+
+    // Iterate from the front to the end without removing anything
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Node<T> next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                T item = next.getItem();
+                next = next.getNext();
+                return item;
+            }
+        };
+    }
 }
\ No newline at end of file
@@ -9,20 +9,22 @@ public interface TaxEvasionInterface {
     void insert(LargeDepositor item);
 
     /*
-     * Takes input file and updates tree usin insert method
-     * 1 insert per input file line
+     * Takes input file and updates tree with its depositors
+     * 1 depositor per input file line
      */
     void load(String filename);
 
     /*
      * Updates LargeDepositor savings (already exists in the tree)
-     * If given AFM doesn't exist, print message
+     * Returns false if given AFM doesn't exist, nothing is printed
      */
-    void updateSavings(int AFM, double savings);
+    boolean updateSavings(int AFM, double savings);
 
     /*
      * Search LargeDepositor by AFM
      * Prints message accordingly if not found
+     * The result may be the object the implementation stores: treat it as read-only
+     * and change savings through updateSavings
      */
     LargeDepositor searchByAFM(int AFM);
 
@@ -31,7 +33,7 @@ public interface TaxEvasionInterface {
      * Prints list of max 5 subjects with respective details
      * Returns null if not found
      */
-    StringDoubleEndedQueueImpl<LargeDepositor> searchByLastName(String last_name);
+    StringDoubleEndedQueue<LargeDepositor> searchByLastName(String last_name);
 
     /*
      * Removes item from tree based on AFM
@@ -0,0 +1,289 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of a RandomizedBST, enabled with RandomizedBST.enableMetrics.
+ *
+ * Per operation (insert, search, update, remove): the number of calls, the misses and a
+ * latency histogram with one bucket per power of two of nanoseconds. Per tree: rotations,
+ * join steps, root insertions, and the depth of nodes at uniformly random positions, measured
+ * on about one operation in 'depthSampleRate' so that the average and maximum depth can be
+ * followed without walking the whole tree.
+ *
+ * All counters are LongAdders, so recording is cheap even when several threads share the
+ * metrics (e.g. the forked tasks of the set operations). A tree without metrics only pays
+ * for a null check per operation.
+ */
+public class TreeMetrics implements TreeMetricsMXBean {
+
+    static final int INSERT = 0;
+    static final int SEARCH = 1;
+    static final int UPDATE = 2;
+    static final int REMOVE = 3;
+    private static final String[] OPERATIONS = {"insert", "search", "update", "remove"};
+
+    // Bucket b counts latencies in [2^(b-1), 2^b) ns, the last one everything from about 1 minute up
+    private static final int BUCKETS = 37;
+
+    private final IntSupplier size; // Current size of the tree
+    private final int depthSampleRate;
+
+    private final LongAdder[] calls = new LongAdder[OPERATIONS.length];
+    private final LongAdder[] misses = new LongAdder[OPERATIONS.length];
+    private final LongAdder[] totalNanos = new LongAdder[OPERATIONS.length];
+    private final LongAdder[][] histograms = new LongAdder[OPERATIONS.length][BUCKETS];
+    final LongAdder rotations = new LongAdder();
+    final LongAdder joinSteps = new LongAdder();
+    final LongAdder rootInsertions = new LongAdder();
+    private final LongAdder depthSamples = new LongAdder();
+    private final LongAdder depthTotal = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param size The current size of the tree, for the expected depth.
+     * @param depthSampleRate Measure the depth on one operation in this many, on average.
+     */
+    TreeMetrics(IntSupplier size, int depthSampleRate) {
+        if (depthSampleRate < 1) {
+            throw new IllegalArgumentException("Depth sample rate must be at least 1: " + depthSampleRate);
+        }
+        this.size = size;
+        this.depthSampleRate = depthSampleRate;
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            calls[op] = new LongAdder();
+            misses[op] = new LongAdder();
+            totalNanos[op] = new LongAdder();
+            for (int b = 0; b < BUCKETS; b++) {
+                histograms[op][b] = new LongAdder();
+            }
+        }
+    }
+
+    // Histogram bucket of a latency: the number of bits of the nanoseconds, capped
+    static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+    }
+
+    // Record one call of an operation that started at 'startNanos' (System.nanoTime)
+    void record(int operation, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        calls[operation].increment();
+        totalNanos[operation].add(nanos);
+        histograms[operation][bucket(nanos)].increment();
+    }
+
+    void miss(int operation) {
+        misses[operation].increment();
+    }
+
+    // Whether this operation should measure a depth
+    boolean sampleDepth() {
+        return depthSampleRate == 1 || ThreadLocalRandom.current().nextInt(depthSampleRate) == 0;
+    }
+
+    void recordDepth(int depth) {
+        depthSamples.increment();
+        depthTotal.add(depth);
+        maxDepth.accumulate(depth);
+    }
+
+    private static int operation(String name) {
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            if (OPERATIONS[op].equalsIgnoreCase(name)) {
+                return op;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + name + ", expected insert, search, update or remove");
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @param name The name of the tree, part of the ObjectName.
+     * @return The ObjectName, e.g. for unregister.
+     * @throws JMException If the name is not valid or already registered.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("RandomizedBST:type=TreeMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // Removes the registration made by register
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    @Override
+    public long getInsertCount() {
+        return calls[INSERT].sum();
+    }
+
+    @Override
+    public long getSearchCount() {
+        return calls[SEARCH].sum();
+    }
+
+    @Override
+    public long getUpdateCount() {
+        return calls[UPDATE].sum();
+    }
+
+    @Override
+    public long getRemoveCount() {
+        return calls[REMOVE].sum();
+    }
+
+    // An insert "misses" when the AFM is already in the tree
+    @Override
+    public long getInsertDuplicates() {
+        return misses[INSERT].sum();
+    }
+
+    @Override
+    public long getSearchMisses() {
+        return misses[SEARCH].sum();
+    }
+
+    @Override
+    public long getUpdateMisses() {
+        return misses[UPDATE].sum();
+    }
+
+    @Override
+    public long getRemoveMisses() {
+        return misses[REMOVE].sum();
+    }
+
+    @Override
+    public long getRotations() {
+        return rotations.sum();
+    }
+
+    @Override
+    public long getJoinSteps() {
+        return joinSteps.sum();
+    }
+
+    @Override
+    public long getRootInsertions() {
+        return rootInsertions.sum();
+    }
+
+    @Override
+    public long getDepthSamples() {
+        return depthSamples.sum();
+    }
+
+    @Override
+    public double getMeanDepth() {
+        long samples = depthSamples.sum();
+        return samples == 0 ? 0.0 : (double) depthTotal.sum() / samples;
+    }
+
+    @Override
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    // The average node depth of a random BST with n nodes is 2 (1 + 1/n) H(n) - 4 (root at depth 0)
+    @Override
+    public double getExpectedMeanDepth() {
+        int n = size.getAsInt();
+        if (n == 0) {
+            return 0.0;
+        }
+        double harmonic = 0.0;
+        if (n <= 1000) {
+            for (int i = 1; i <= n; i++) {
+                harmonic += 1.0 / i;
+            }
+        } else {
+            harmonic = Math.log(n) + 0.5772156649015329 + 1.0 / (2.0 * n);
+        }
+        return 2.0 * (1.0 + 1.0 / n) * harmonic - 4.0;
+    }
+
+    @Override
+    public double getMeanLatencyNanos(String operation) {
+        int op = operation(operation);
+        long count = calls[op].sum();
+        return count == 0 ? 0.0 : (double) totalNanos[op].sum() / count;
+    }
+
+    @Override
+    public long getLatencyPercentileNanos(String operation, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        long[] histogram = getLatencyHistogram(operation);
+        long count = 0;
+        for (long c : histogram) {
+            count += c;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram[b];
+            if (seen >= Math.max(target, 1)) {
+                return b == BUCKETS - 1 ? Long.MAX_VALUE : (1L << b) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public long[] getLatencyHistogram(String operation) {
+        int op = operation(operation);
+        long[] histogram = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            histogram[b] = histograms[op][b].sum();
+        }
+        return histogram;
+    }
+
+    // The metrics as text, one line per operation and one per tree counter
+    @Override
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-8s %12s %10s %12s %12s %12s%n", "op", "calls", "misses", "mean ns", "p50 ns", "p99 ns"));
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            String name = OPERATIONS[op];
+            text.append(String.format("%-8s %12d %10d %12.0f %12d %12d%n", name, calls[op].sum(), misses[op].sum(),
+                    getMeanLatencyNanos(name), getLatencyPercentileNanos(name, 50), getLatencyPercentileNanos(name, 99)));
+        }
+        text.append(String.format("rotations %d, join steps %d, root insertions %d%n",
+                getRotations(), getJoinSteps(), getRootInsertions()));
+        text.append(String.format("depth: mean %.2f (random BST of %d nodes: %.2f), max %d, from %d samples%n",
+                getMeanDepth(), size.getAsInt(), getExpectedMeanDepth(), getMaxDepth(), getDepthSamples()));
+        return text.toString();
+    }
+
+    // Set every counter back to zero
+    @Override
+    public void reset() {
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            calls[op].reset();
+            misses[op].reset();
+            totalNanos[op].reset();
+            for (LongAdder bucket : histograms[op]) {
+                bucket.reset();
+            }
+        }
+        rotations.reset();
+        joinSteps.reset();
+        rootInsertions.reset();
+        depthSamples.reset();
+        depthTotal.reset();
+        maxDepth.reset();
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * JMX view of the metrics of a RandomizedBST, see TreeMetrics.
+ * Latencies are in nanoseconds; percentiles are the upper bound of their power-of-two bucket.
+ */
+public interface TreeMetricsMXBean {
+
+    long getInsertCount();
+
+    long getSearchCount();
+
+    long getUpdateCount();
+
+    long getRemoveCount();
+
+    long getInsertDuplicates();
+
+    long getSearchMisses();
+
+    long getUpdateMisses();
+
+    long getRemoveMisses();
+
+    long getRotations();
+
+    long getJoinSteps();
+
+    long getRootInsertions();
+
+    long getDepthSamples();
+
+    double getMeanDepth();
+
+    long getMaxDepth();
+
+    // Mean depth of a node in a random BST of the current size, to compare with getMeanDepth
+    double getExpectedMeanDepth();
+
+    double getMeanLatencyNanos(String operation);
+
+    long getLatencyPercentileNanos(String operation, double percentile);
+
+    // Number of calls per power-of-two latency bucket, see TreeMetrics.bucket
+    long[] getLatencyHistogram(String operation);
+
+    String dump();
+
+    void reset();
+}
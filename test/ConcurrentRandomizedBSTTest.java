@@ -0,0 +1,148 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * A short run of the ConcurrentRandomizedBSTStress checks (the long-running version is in the
+ * benchmarks module): writers change their own AFM ranges while readers search, compute the
+ * mean and check the invariants of the published version, then the tree must match what the
+ * writers recorded.
+ */
+class ConcurrentRandomizedBSTTest {
+
+    private static final int WRITERS = 2;
+    private static final int READERS = 2;
+    private static final long MILLIS = 1000;
+    private static final int PINNED = 200;
+    private static final int RANGE = 1000; // AFMs owned by each writer
+    private static final int BASE_AFM = 100000000;
+
+    @Test
+    @Timeout(30)
+    void readersSeeConsistentVersionsWhileWritersChangeTheTree() throws InterruptedException {
+        ConcurrentRandomizedBST tree = new ConcurrentRandomizedBST();
+        for (int i = 0; i < PINNED; i++) {
+            tree.insert(new LargeDepositor(BASE_AFM + i, "PINNED", "P" + (i % 10), 1000 + i, 10000));
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Map<Integer, LargeDepositor>> expected = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            Map<Integer, LargeDepositor> owned = new HashMap<>();
+            expected.add(owned);
+            int base = BASE_AFM + PINNED + w * RANGE;
+            threads.add(new Thread(() -> {
+                try {
+                    Random random = new Random(base);
+                    while (running.get()) {
+                        int AFM = base + random.nextInt(RANGE);
+                        int op = random.nextInt(3);
+                        if (op == 0) {
+                            LargeDepositor item = new LargeDepositor(AFM, "W", "L" + random.nextInt(20),
+                                    random.nextInt(1000000), random.nextInt(20000));
+                            tree.insert(item);
+                            owned.putIfAbsent(AFM, item);
+                        } else if (op == 1) {
+                            double savings = random.nextInt(1000000);
+                            tree.updateSavings(AFM, savings);
+                            LargeDepositor old = owned.get(AFM);
+                            if (old != null) {
+                                owned.put(AFM, new LargeDepositor(AFM, old.firstNameCode, old.lastNameCode, savings, old.taxedIncome));
+                            }
+                        } else {
+                            tree.remove(AFM);
+                            owned.remove(AFM);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "writer-" + w));
+        }
+
+        for (int r = 0; r < READERS; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long count = 0;
+                    while (running.get()) {
+                        int pinned = BASE_AFM + random.nextInt(PINNED);
+                        LargeDepositor found = tree.searchByAFM(pinned);
+                        if (found == null || found.key() != pinned) {
+                            throw new IllegalStateException("Pinned depositor " + pinned + " not visible");
+                        }
+
+                        int AFM = BASE_AFM + PINNED + random.nextInt(WRITERS * RANGE);
+                        LargeDepositor item = tree.searchByAFM(AFM);
+                        if (item != null && item.key() != AFM) {
+                            throw new IllegalStateException("Search for " + AFM + " returned " + item);
+                        }
+
+                        double mean = tree.getMeanSavings();
+                        if (mean < 0 || mean > 1000000) {
+                            throw new IllegalStateException("Mean savings out of range: " + mean);
+                        }
+
+                        if (count % 100 == 0) {
+                            tree.checkInvariants();
+                        }
+                        count++;
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "reader-" + r));
+        }
+
+        // Misses print a message, keep them out of the test output
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            Thread.sleep(MILLIS);
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            running.set(false);
+            System.setOut(stdout);
+        }
+        assertTrue(failures.isEmpty(), () -> "Failures: " + failures);
+
+        tree.checkInvariants();
+        int expectedSize = PINNED;
+        double expectedSum = PINNED * 1000.0 + (PINNED - 1) * PINNED / 2.0;
+        for (Map<Integer, LargeDepositor> owned : expected) {
+            expectedSize += owned.size();
+            for (LargeDepositor item : owned.values()) {
+                expectedSum += item.savings;
+                LargeDepositor found = tree.searchByAFM(item.key());
+                assertNotNull(found, "AFM " + item.key());
+                assertEquals(item.savings, found.savings, "AFM " + item.key());
+                assertEquals(item.lastNameCode, found.lastNameCode, "AFM " + item.key());
+            }
+        }
+        assertEquals(expectedSize, tree.size());
+        assertEquals(expectedSum / expectedSize, tree.getMeanSavings(), 1e-6 * expectedSum / expectedSize);
+    }
+}
@@ -0,0 +1,175 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Replays write-ahead logs, including logs whose last entry was torn by a crash, both on their
+ * own and through DurableRandomizedBST.
+ */
+class DepositorLogTest {
+
+    // Records the replayed entries as text
+    private static final class Recorder implements DepositorLog.Listener {
+        final List<String> entries = new ArrayList<>();
+
+        @Override
+        public void insert(LargeDepositor item) {
+            entries.add("insert " + item);
+        }
+
+        @Override
+        public void updateSavings(int AFM, double savings) {
+            entries.add("update " + AFM + " " + savings);
+        }
+
+        @Override
+        public void remove(int AFM) {
+            entries.add("remove " + AFM);
+        }
+    }
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replayStopsBeforeTornEntry() throws IOException {
+        Path file = dir.resolve("depositors.log");
+        long[] ends = new long[4];
+        try (DepositorLog log = new DepositorLog(file, 0, 1 << 12, 1)) {
+            ends[0] = log.appendInsert(new LargeDepositor(1, "ΑΝΝΑ", "ΠΑΠΑ", 10.5, 9000));
+            ends[1] = log.appendUpdate(1, 20.25);
+            ends[2] = log.appendInsert(new LargeDepositor(2, "NIKOS", "PAPAS", 30, 40));
+            ends[3] = log.appendRemove(1);
+            log.sync();
+        }
+        List<String> all = List.of(
+                "insert AFM: 1, Name: ΑΝΝΑ ΠΑΠΑ, Savings: 10.5, Taxed Income: 9000.0",
+                "update 1 20.25",
+                "insert AFM: 2, Name: NIKOS PAPAS, Savings: 30.0, Taxed Income: 40.0",
+                "remove 1");
+        Recorder complete = new Recorder();
+        assertEquals(ends[3], DepositorLog.replay(file, complete));
+        assertEquals(all, complete.entries);
+
+        // Cut the file at every byte inside the third entry: replay keeps the first two
+        byte[] bytes = Files.readAllBytes(file);
+        for (long cut = ends[1] + 1; cut < ends[2]; cut++) {
+            Path torn = dir.resolve("torn-" + cut + ".log");
+            Files.write(torn, Arrays.copyOf(bytes, (int) cut));
+            Recorder recorder = new Recorder();
+            assertEquals(ends[1], DepositorLog.replay(torn, recorder), "cut at " + cut);
+            assertEquals(all.subList(0, 2), recorder.entries, "cut at " + cut);
+        }
+
+        // A corrupt payload byte fails the checksum
+        bytes[(int) ends[1] + Integer.BYTES + 2] ^= 1;
+        Files.write(file, bytes);
+        Recorder recorder = new Recorder();
+        assertEquals(ends[1], DepositorLog.replay(file, recorder));
+        assertEquals(all.subList(0, 2), recorder.entries);
+    }
+
+    @Test
+    void reopenedLogDropsTornEntryAndContinues() throws IOException {
+        Path file = dir.resolve("depositors.log");
+        long end;
+        try (DepositorLog log = new DepositorLog(file, 0, 1 << 12, 1)) {
+            end = log.appendUpdate(7, 1.5);
+            log.appendUpdate(8, 2.5);
+        }
+        truncate(file, Files.size(file) - 3);
+
+        long validLength = DepositorLog.replay(file, new Recorder());
+        assertEquals(end, validLength);
+        try (DepositorLog log = new DepositorLog(file, validLength, 1 << 12, 1)) {
+            log.appendRemove(7);
+        }
+        Recorder recorder = new Recorder();
+        assertEquals(Files.size(file), DepositorLog.replay(file, recorder));
+        assertEquals(List.of("update 7 1.5", "remove 7"), recorder.entries);
+    }
+
+    @Test
+    void durableTreeRecoversAllButTornChange() throws IOException {
+        Path store = dir.resolve("store");
+        List<LargeDepositor> depositors = DepositorGenerator.generate(200, 11);
+        // The tree keeps the depositor it is given and updates it in place, so it gets copies
+        try (DurableRandomizedBST tree = DurableRandomizedBST.open(store, 1 << 12, 1, true)) {
+            for (LargeDepositor item : depositors.subList(0, 100)) {
+                tree.insert(item.copy());
+            }
+            tree.compact(); // The first 100 go into the snapshot
+            for (LargeDepositor item : depositors.subList(100, 200)) {
+                tree.insert(item.copy());
+            }
+            tree.updateSavings(depositors.get(0).key(), 123.45);
+            tree.remove(depositors.get(1).key());
+            tree.updateSavings(depositors.get(2).key(), 678.9); // Torn below
+        }
+        Path log = store.resolve("depositors.log");
+        truncate(log, Files.size(log) - 1);
+
+        try (DurableRandomizedBST tree = DurableRandomizedBST.open(store, 1 << 12, 1, true)) {
+            assertEquals(199, tree.size());
+            assertEquals(123.45, tree.searchByAFM(depositors.get(0).key()).getSavings());
+            assertEquals(depositors.get(2).getSavings(), tree.searchByAFM(depositors.get(2).key()).getSavings());
+            assertEquals(depositors.get(150).toString(), tree.searchByAFM(depositors.get(150).key()).toString());
+            assertNull(tree.searchByAFM(depositors.get(1).key()));
+
+            // The log continues after the last valid entry
+            tree.updateSavings(depositors.get(2).key(), 1.25);
+        }
+        try (DurableRandomizedBST tree = DurableRandomizedBST.open(store, 1 << 12, 1, true)) {
+            assertEquals(199, tree.size());
+            assertEquals(1.25, tree.searchByAFM(depositors.get(2).key()).getSavings());
+        }
+    }
+
+    @Test
+    void nullNamesAreLogged() throws IOException {
+        Path store = dir.resolve("null-names");
+        try (DurableRandomizedBST tree = DurableRandomizedBST.open(store, 1 << 12, 1, true)) {
+            tree.insert(new LargeDepositor(1, null, "PAPAS", 10, 9000));
+            tree.insert(new LargeDepositor(2, "ANNA", null, 20, 100));
+        }
+        try (DurableRandomizedBST tree = DurableRandomizedBST.open(store, 1 << 12, 1, true)) {
+            assertEquals(2, tree.size());
+            assertNull(tree.searchByAFM(1).getFirstName());
+            assertEquals("PAPAS", tree.searchByAFM(1).getLastName());
+            assertNull(tree.searchByAFM(2).getLastName());
+        }
+    }
+
+    @Test
+    void changeIsNotAppliedWhenTheLogFails() throws IOException {
+        DurableRandomizedBST tree = DurableRandomizedBST.open(dir.resolve("failing"), 1 << 12, 1, true);
+        tree.insert(new LargeDepositor(1, "ANNA", "PAPAS", 10, 9000));
+        tree.close(); // Every append fails from now on
+
+        assertThrows(UncheckedIOException.class, () -> tree.insert(new LargeDepositor(2, "NIKOS", "PAPAS", 20, 100)));
+        assertThrows(UncheckedIOException.class, () -> tree.updateSavings(1, 99));
+        assertThrows(UncheckedIOException.class, () -> tree.remove(1));
+        assertEquals(1, tree.size());
+        assertNull(tree.searchByAFM(2));
+        assertEquals(10, tree.searchByAFM(1).getSavings());
+    }
+
+    private static void truncate(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+        }
+    }
+}
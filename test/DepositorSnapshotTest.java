@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saves trees to snapshots and reopens them: the reopened tree must have the same depositors,
+ * in the same orders, as the saved one.
+ */
+class DepositorSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reopenedTreeEqualsSavedTree() throws IOException {
+        RandomizedBST saved = new RandomizedBST(3);
+        saved.bulkLoad(DepositorGenerator.generate(5000, 3));
+        saved.insert(new LargeDepositor(42, "ΓΙΩΡΓΟΣ", "ΠΑΠΑΔΟΠΟΥΛΟΣ", 1000.5, 20000));
+        saved.remove(42);
+        saved.insert(new LargeDepositor(43, "ΕΛΕΝΗ", "ΝΙΚΟΛΑΟΥ", 2000.25, 100));
+        Path file = dir.resolve("depositors.snapshot");
+        saved.saveSnapshot(file);
+
+        RandomizedBST reopened = RandomizedBST.openSnapshot(file);
+        assertEquals(saved.size(), reopened.size());
+        assertEquals(depositors(saved.iteratorByAFM()), depositors(reopened.iteratorByAFM()));
+        assertEquals(saved.getMeanSavings(), reopened.getMeanSavings(), 1e-9 * saved.getMeanSavings());
+        assertEquals(printed(() -> saved.printTopLargeDepositors(100)),
+                printed(() -> reopened.printTopLargeDepositors(100)));
+        for (String name : new String[] {"ΝΙΚΟΛΑΟΥ", DepositorGenerator.generate(1, 3).get(0).getLastName()}) {
+            assertEquals(depositors(saved.searchByLastName(name).iterator()),
+                    depositors(reopened.searchByLastName(name).iterator()), name);
+        }
+    }
+
+    @Test
+    void emptyTree() throws IOException {
+        Path file = dir.resolve("empty.snapshot");
+        new RandomizedBST(1).saveSnapshot(file);
+        assertEquals(0, RandomizedBST.openSnapshot(file).size());
+    }
+
+    @Test
+    void nullNamesSurvive() throws IOException {
+        LargeDepositor first = new LargeDepositor(1, null, "ΠΑΠΑΣ", 10, 20);
+        LargeDepositor second = new LargeDepositor(2, "ΑΝΝΑ", "ΠΑΠΑΣ", 30, 40);
+        LargeDepositor[] items = {first, second};
+        LargeDepositor[] bySuspicion = items.clone();
+        Arrays.sort(bySuspicion, DepositorIndex.BY_SUSPICION);
+        Path file = dir.resolve("null.snapshot");
+        DepositorSnapshot.write(file, new DepositorSnapshot.Contents(items, items.clone(), bySuspicion));
+
+        DepositorSnapshot.Contents read = DepositorSnapshot.read(file);
+        assertNull(read.byAFM[0].getFirstName());
+        assertEquals(first.toString(), read.byAFM[0].toString());
+        assertEquals(second.toString(), read.byAFM[1].toString());
+    }
+
+    @Test
+    void corruptSnapshotIsRejected() throws IOException {
+        RandomizedBST saved = new RandomizedBST(5);
+        saved.bulkLoad(DepositorGenerator.generate(100, 5));
+        Path file = dir.resolve("corrupt.snapshot");
+        saved.saveSnapshot(file);
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> RandomizedBST.openSnapshot(file));
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> RandomizedBST.openSnapshot(file));
+    }
+
+    private static List<String> depositors(Iterator<LargeDepositor> items) {
+        List<String> result = new ArrayList<>();
+        items.forEachRemaining(item -> result.add(item.toString()));
+        return result;
+    }
+
+    // What the action prints to System.out
+    private static String printed(Runnable action) {
+        PrintStream previous = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        try {
+            action.run();
+        } finally {
+            System.setOut(previous);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,149 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Runs the same script of operations against every engine of DepositorBenchmark.newEngine
+ * (and a sharded engine with several shards) and checks that they all agree with RandomizedBST:
+ * every returned value, the mean savings and the printed depositors.
+ */
+class EngineAgreementTest {
+
+    private static final String[] ENGINES = {"bst", "bplus", "concurrent", "columnar", "sharded"};
+    private static final int SIZE = 3000;
+    private static final int OPERATIONS = 5000;
+    private static final long SEED = 7;
+
+    // What one engine returned and printed for the script
+    private static final class Trace {
+        final List<String> results = new ArrayList<>();
+        final List<Double> means = new ArrayList<>();
+        String byAFM;
+        String top;
+    }
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void enginesAgreeWithRandomizedBST() throws IOException {
+        Path file = dir.resolve("depositors.txt");
+        DepositorGenerator.write(file, SIZE, SEED);
+
+        Trace expected = run(DepositorBenchmark.newEngine("bst", SEED), file);
+        assertFalse(expected.byAFM.isEmpty() || expected.top.isEmpty() || expected.means.isEmpty());
+        List<TaxEvasionInterface> engines = new ArrayList<>();
+        for (String name : ENGINES) {
+            engines.add(DepositorBenchmark.newEngine(name, SEED));
+        }
+        engines.add(new ShardedRandomizedBST(4, SEED));
+
+        for (TaxEvasionInterface engine : engines) {
+            String name = engine.getClass().getSimpleName();
+            Trace actual = run(engine, file);
+            assertEquals(expected.results.size(), actual.results.size(), name);
+            for (int i = 0; i < expected.results.size(); i++) {
+                assertEquals(expected.results.get(i), actual.results.get(i), name + ", operation " + i);
+            }
+            for (int i = 0; i < expected.means.size(); i++) {
+                double mean = expected.means.get(i);
+                assertEquals(mean, actual.means.get(i), 1e-9 * Math.abs(mean), name + ", mean " + i);
+            }
+            assertEquals(expected.byAFM, actual.byAFM, name + ", printByAFM");
+            assertEquals(expected.top, actual.top, name + ", printTopLargeDepositors");
+        }
+    }
+
+    // Load the file, run the script and print everything at the end
+    private static Trace run(TaxEvasionInterface engine, Path file) {
+        Trace trace = new Trace();
+        List<LargeDepositor> loaded = DepositorGenerator.generate(SIZE, SEED);
+        // New AFMs: the seed continues the AFM sequence right after the loaded depositors
+        List<LargeDepositor> extra = DepositorGenerator.generate(OPERATIONS, SEED + SIZE);
+        SplittableRandom random = new SplittableRandom(SEED);
+
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream discarded = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(discarded, true, StandardCharsets.UTF_8));
+        try {
+            engine.load(file.toString());
+            for (int i = 0; i < OPERATIONS; i++) {
+                int AFM = random.nextBoolean()
+                        ? loaded.get(random.nextInt(SIZE)).key()
+                        : extra.get(random.nextInt(OPERATIONS)).key();
+                switch (random.nextInt(7)) {
+                    case 0: {
+                        // One insert in ten is a duplicate of a loaded depositor. Copy, since the
+                        // engines may keep the object they are given
+                        LargeDepositor item = i % 10 == 0 ? loaded.get(random.nextInt(SIZE)) : extra.get(i);
+                        engine.insert(item.copy());
+                        break;
+                    }
+                    case 1:
+                        trace.results.add("update " + engine.updateSavings(AFM, random.nextInt(2000000) / 100.0));
+                        break;
+                    case 2:
+                        engine.remove(AFM);
+                        break;
+                    case 3:
+                        trace.results.add("search " + engine.searchByAFM(AFM));
+                        break;
+                    case 4: {
+                        String lastName = loaded.get(random.nextInt(SIZE)).getLastName();
+                        trace.results.add("name " + lastName + " " + afms(engine.searchByLastName(lastName)));
+                        break;
+                    }
+                    case 5:
+                        trace.results.add("name missing " + afms(engine.searchByLastName("NOBODY" + i)));
+                        break;
+                    default:
+                        trace.means.add(engine.getMeanSavings());
+                        break;
+                }
+            }
+            trace.byAFM = printed(engine::printByAFM);
+            trace.top = printed(() -> engine.printTopLargeDepositors(50));
+        } finally {
+            System.setOut(stdout);
+        }
+        return trace;
+    }
+
+    // The AFMs of a search result, in result order
+    private static String afms(StringDoubleEndedQueue<LargeDepositor> result) {
+        if (result == null) {
+            return "null";
+        }
+        StringBuilder afms = new StringBuilder();
+        for (LargeDepositor item : result) {
+            afms.append(item.key()).append(' ');
+        }
+        return afms.toString();
+    }
+
+    // What the action prints to System.out
+    private static String printed(Runnable action) {
+        PrintStream previous = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        try {
+            action.run();
+        } finally {
+            System.out.flush();
+            System.setOut(previous);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,195 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the exact, prefix and similar name searches of LastNameTrie against brute force over
+ * the same depositors, while depositors are inserted and removed.
+ */
+class LastNameTrieTest {
+
+    // Names that share prefixes, are prefixes of each other or are a few edits apart
+    private static final String[] NAMES = {
+        "", "A", "Ab", "Abc", "Abd", "Papadopoulos", "Papadopulos", "Papas", "Pappas", "Pa",
+        "Nikolaou", "Nikolaidis", "Nik", "Zeta", "Ζήσης", "Ζήση"
+    };
+
+    @Test
+    void searchesMatchBruteForce() {
+        Random random = new Random(5);
+        LastNameTrie trie = new LastNameTrie();
+        Map<Integer, LargeDepositor> expected = new HashMap<>();
+
+        for (int step = 0; step < 20000; step++) {
+            int AFM = random.nextInt(3000);
+            if (random.nextInt(3) > 0) {
+                if (!expected.containsKey(AFM)) {
+                    LargeDepositor item = new LargeDepositor(AFM, "F", NAMES[random.nextInt(NAMES.length)],
+                            random.nextInt(1000), 1);
+                    trie.insert(item);
+                    expected.put(AFM, item);
+                }
+            } else {
+                LargeDepositor item = expected.remove(AFM);
+                if (item != null) {
+                    assertTrue(trie.remove(item));
+                }
+            }
+            if (step % 1000 == 0) {
+                check(trie, expected, random);
+            }
+        }
+
+        for (LargeDepositor item : new ArrayList<>(expected.values())) {
+            trie.remove(item);
+            expected.remove(item.key());
+        }
+        check(trie, expected, random);
+    }
+
+    @Test
+    void loadSortedEqualsInserts() {
+        List<LargeDepositor> depositors = DepositorGenerator.generate(5000, 9);
+        LastNameTrie inserted = new LastNameTrie();
+        for (LargeDepositor item : depositors) {
+            inserted.insert(item);
+        }
+
+        LargeDepositor[] sorted = depositors.toArray(new LargeDepositor[0]);
+        Arrays.sort(sorted, DepositorIndex.BY_LAST_NAME);
+        LastNameTrie loaded = new LastNameTrie();
+        loaded.loadSorted(sorted);
+
+        assertArrayEquals(sorted, inserted.toArray());
+        assertArrayEquals(sorted, loaded.toArray());
+    }
+
+    @Test
+    void nullNamesAreKeptApart() {
+        LastNameTrie trie = new LastNameTrie();
+        LargeDepositor named = new LargeDepositor(5, "A", "Papas", 10, 9000);
+        LargeDepositor first = new LargeDepositor(7, "B", null, 20, 9000);
+        LargeDepositor second = new LargeDepositor(3, null, null, 30, 100);
+        trie.insert(named);
+        trie.insert(first);
+        trie.insert(second);
+
+        assertEquals(3, trie.size());
+        // Null names first, as in DepositorIndex.BY_LAST_NAME
+        assertArrayEquals(new LargeDepositor[] {second, first, named}, trie.toArray());
+        LargeDepositor[] sorted = {named, first, second};
+        Arrays.sort(sorted, DepositorIndex.BY_LAST_NAME);
+        assertArrayEquals(sorted, trie.toArray());
+
+        // No search matches a null name, not even the code of a name that was never interned
+        StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueImpl<>();
+        assertEquals(0, trie.collectExact(NameDictionary.NIL, Integer.MAX_VALUE, result));
+        assertEquals(1, trie.collectPrefix("", Integer.MAX_VALUE, result));
+        assertEquals(1, trie.collectSimilar("Papa", 2, Integer.MAX_VALUE, result));
+
+        assertTrue(trie.remove(first));
+        assertFalse(trie.remove(first));
+        assertTrue(trie.remove(second));
+        assertEquals(1, trie.size());
+        assertArrayEquals(new LargeDepositor[] {named}, trie.toArray());
+    }
+
+    private static void check(LastNameTrie trie, Map<Integer, LargeDepositor> expected, Random random) {
+        List<LargeDepositor> all = new ArrayList<>(expected.values());
+        all.sort(DepositorIndex.BY_LAST_NAME);
+        assertEquals(all.size(), trie.size());
+        assertEquals(keys(all, Integer.MAX_VALUE), keys(trie.toArray()));
+
+        for (String name : NAMES) {
+            List<LargeDepositor> exact = new ArrayList<>();
+            for (LargeDepositor item : all) {
+                if (item.getLastName().equals(name)) {
+                    exact.add(item);
+                }
+            }
+            StringDoubleEndedQueue<LargeDepositor> result = new StringDoubleEndedQueueImpl<>();
+            trie.collectExact(NameDictionary.SHARED.code(name), Integer.MAX_VALUE, result);
+            assertEquals(keys(exact, Integer.MAX_VALUE), keys(result), "exact " + name);
+
+            for (int length = 0; length <= name.length(); length++) {
+                String prefix = name.substring(0, length);
+                int limit = 1 + random.nextInt(50);
+                List<LargeDepositor> matches = new ArrayList<>();
+                for (LargeDepositor item : all) {
+                    if (item.getLastName().startsWith(prefix)) {
+                        matches.add(item);
+                    }
+                }
+                result = new StringDoubleEndedQueueImpl<>();
+                trie.collectPrefix(prefix, limit, result);
+                assertEquals(keys(matches, limit), keys(result), "prefix " + prefix);
+            }
+
+            String query = name.length() > 2 ? name.substring(1) : name + "o";
+            for (int maxEdits = 0; maxEdits <= 3; maxEdits++) {
+                int limit = 1 + random.nextInt(200);
+                List<LargeDepositor> matches = new ArrayList<>();
+                for (LargeDepositor item : all) {
+                    if (distance(item.getLastName(), query) <= maxEdits) {
+                        matches.add(item);
+                    }
+                }
+                // Closest names first, then (lastName, AFM)
+                matches.sort(Comparator.<LargeDepositor>comparingInt(item -> distance(item.getLastName(), query))
+                        .thenComparing(DepositorIndex.BY_LAST_NAME));
+                result = new StringDoubleEndedQueueImpl<>();
+                trie.collectSimilar(query, maxEdits, limit, result);
+                assertEquals(keys(matches, limit), keys(result), "similar " + query + " " + maxEdits);
+            }
+        }
+    }
+
+    // Levenshtein distance, the full table
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            for (int j = 1; j <= b.length(); j++) {
+                int substitute = d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                d[i][j] = Math.min(substitute, Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    private static List<Integer> keys(List<LargeDepositor> items, int limit) {
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < items.size() && i < limit; i++) {
+            keys.add(items.get(i).key());
+        }
+        return keys;
+    }
+
+    private static List<Integer> keys(LargeDepositor[] items) {
+        return keys(List.of(items), Integer.MAX_VALUE);
+    }
+
+    private static List<Integer> keys(StringDoubleEndedQueue<LargeDepositor> result) {
+        List<Integer> keys = new ArrayList<>();
+        for (LargeDepositor item : result) {
+            keys.add(item.key());
+        }
+        return keys;
+    }
+}
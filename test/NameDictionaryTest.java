@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Interns names from several threads at once, through both intern methods, and checks that
+ * every name got one code and that lookups agree with it.
+ */
+class NameDictionaryTest {
+
+    private static final int THREADS = 8;
+    private static final int NAMES = 50000;
+
+    @Test
+    void concurrentInternsAgree() throws Exception {
+        NameDictionary dictionary = new NameDictionary();
+        int[][] codes = new int[THREADS][NAMES];
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                pending.add(workers.submit(() -> {
+                    // Every thread visits all the names, in its own order
+                    for (int i = 0; i < NAMES; i++) {
+                        int n = (int) ((i * 7919L + thread * 131L) % NAMES);
+                        String name = name(n);
+                        if (i % 2 == 0) {
+                            codes[thread][n] = dictionary.intern(name);
+                        } else {
+                            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                            codes[thread][n] = dictionary.intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } finally {
+            workers.shutdown();
+        }
+
+        assertEquals(NAMES, dictionary.size());
+        for (int n = 0; n < NAMES; n++) {
+            for (int t = 1; t < THREADS; t++) {
+                assertEquals(codes[0][n], codes[t][n], name(n));
+            }
+            assertEquals(name(n), dictionary.name(codes[0][n]));
+            assertEquals(codes[0][n], dictionary.code(name(n)));
+        }
+        assertEquals(NameDictionary.NIL, dictionary.code("MISSING"));
+        assertEquals(NameDictionary.NIL, dictionary.intern((String) null));
+        assertNull(dictionary.name(NameDictionary.NIL));
+    }
+
+    private static String name(int n) {
+        return "ΟΝΟΜΑ" + n;
+    }
+}